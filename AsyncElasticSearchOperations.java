@@ -0,0 +1,178 @@
+package com.jobtrees.jobpostings.service;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.elasticsearch.search.Scroll;
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Non-blocking counterparts of the client calls used by
+ * {@link JobtreesElasticSearchService}, built on the client's {@code *Async}
+ * methods. At most {@code maxConcurrent} requests are outstanding; further
+ * calls are queued without blocking the caller and start as earlier ones
+ * finish.
+ * <p>
+ * Futures are completed on {@code callbackExecutor} rather than on the HTTP
+ * client's I/O threads, so dependent stages may block without stalling the
+ * client. That only holds if the executor is dedicated to these callbacks and
+ * has a thread for each stage that may block at once; on a shared pool such
+ * as {@code ForkJoinPool.commonPool()}, blocking stages starve everything
+ * else that runs there. Once the executor rejects work, e.g. after it was
+ * shut down, futures fail on the I/O thread instead of never completing.
+ */
+public class AsyncElasticSearchOperations {
+
+	private static final Scroll SCROLL = new Scroll(TimeValue.timeValueMinutes(10L));
+
+	private final RestHighLevelClient client;
+	private final Executor callbackExecutor;
+	private final Semaphore permits;
+	private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+	public AsyncElasticSearchOperations(RestHighLevelClient client, int maxConcurrent, Executor callbackExecutor) {
+		this.client = client;
+		this.callbackExecutor = callbackExecutor;
+		this.permits = new Semaphore(maxConcurrent);
+	}
+
+	public CompletableFuture<BulkResponse> bulk(BulkRequest request) {
+		return submit(listener -> client.bulkAsync(request, RequestOptions.DEFAULT, listener));
+	}
+
+	public CompletableFuture<SearchResponse> search(SearchRequest request) {
+		return submit(listener -> client.searchAsync(request, RequestOptions.DEFAULT, listener));
+	}
+
+	public CompletableFuture<SearchResponse> scroll(SearchScrollRequest request) {
+		return submit(listener -> client.scrollAsync(request, RequestOptions.DEFAULT, listener));
+	}
+
+	public CompletableFuture<ClearScrollResponse> clearScroll(ClearScrollRequest request) {
+		return submit(listener -> client.clearScrollAsync(request, RequestOptions.DEFAULT, listener));
+	}
+
+	public CompletableFuture<BulkByScrollResponse> deleteByQuery(DeleteByQueryRequest request) {
+		return submit(listener -> client.deleteByQueryAsync(request, RequestOptions.DEFAULT, listener));
+	}
+
+	/**
+	 * Scrolls the whole result set without blocking, handing each page to
+	 * {@code pageConsumer} in order. Completes with the number of hits read
+	 * once the scroll has been cleared. The scroll is cleared however the
+	 * drain ends, including when a page request or the consumer fails; the
+	 * original failure is the one reported.
+	 */
+	public CompletableFuture<Long> scrollAll(SearchRequest searchRequest, Consumer<SearchHit[]> pageConsumer) {
+		searchRequest.scroll(SCROLL);
+		AtomicLong total = new AtomicLong();
+		AtomicReference<String> scrollId = new AtomicReference<>();
+		return search(searchRequest)
+				.thenCompose(response -> drain(response, pageConsumer, total, scrollId))
+				.handle((count, error) -> {
+					CompletableFuture<?> cleared = scrollId.get() == null ? CompletableFuture.completedFuture(null)
+							: clearScroll(scrollId.get());
+					if (error == null) {
+						return cleared.thenApply(ignored -> count);
+					}
+					return cleared.handle((ignored, clearError) -> null)
+							.thenCompose(ignored -> CompletableFuture.<Long>failedFuture(error));
+				})
+				.thenCompose(result -> result);
+	}
+
+	/** Reads pages until an empty one, keeping the latest scroll id in {@code scrollId} for clearing. */
+	private CompletableFuture<Long> drain(SearchResponse response, Consumer<SearchHit[]> pageConsumer,
+			AtomicLong total, AtomicReference<String> scrollId) {
+		if (response.getScrollId() != null) {
+			scrollId.set(response.getScrollId());
+		}
+		SearchHit[] searchHits = response.getHits().getHits();
+		if (searchHits == null || searchHits.length == 0) {
+			return CompletableFuture.completedFuture(total.get());
+		}
+		pageConsumer.accept(searchHits);
+		total.addAndGet(searchHits.length);
+
+		SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId.get());
+		scrollRequest.scroll(SCROLL);
+		return scroll(scrollRequest).thenCompose(next -> drain(next, pageConsumer, total, scrollId));
+	}
+
+	private CompletableFuture<ClearScrollResponse> clearScroll(String scrollId) {
+		ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+		clearScrollRequest.addScrollId(scrollId);
+		return clearScroll(clearScrollRequest);
+	}
+
+	private <T> CompletableFuture<T> submit(Consumer<ActionListener<T>> call) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		waiting.add(() -> {
+			try {
+				call.accept(new ActionListener<T>() {
+					@Override
+					public void onResponse(T response) {
+						release();
+						try {
+							callbackExecutor.execute(() -> future.complete(response));
+						} catch (RejectedExecutionException rejected) {
+							// The executor is shut down; its callbacks would never run.
+							future.completeExceptionally(rejected);
+						}
+					}
+
+					@Override
+					public void onFailure(Exception e) {
+						release();
+						try {
+							callbackExecutor.execute(() -> future.completeExceptionally(e));
+						} catch (RejectedExecutionException rejected) {
+							future.completeExceptionally(e);
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				release();
+				future.completeExceptionally(e);
+			}
+		});
+		dispatch();
+		return future;
+	}
+
+	private void release() {
+		permits.release();
+		dispatch();
+	}
+
+	private void dispatch() {
+		while (!waiting.isEmpty() && permits.tryAcquire()) {
+			Runnable task = waiting.poll();
+			if (task == null) {
+				permits.release();
+				continue;
+			}
+			task.run();
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+/**
+ * Finds the postings whose title matches any of a role's titles, for many
+ * roles at once.
+ * <p>
+ * Each role's titles become one or more {@code match_phrase} searches of at
+ * most {@code MAX_PHRASES_PER_QUERY} clauses, safely below the cluster's
+ * {@code max_clause_count}. The searches of all roles go out together in
+ * {@code _msearch} requests; a search whose page comes back full is continued
+ * with {@code search_after} in the next round. Mapping every role therefore
+ * takes a handful of requests rather than one scroll per role.
+ * <p>
+ * A round holds as many searches as keep its response within
+ * {@code MAX_HITS_PER_REQUEST} hits. Searches sort on the unique id field
+ * with doc values, or on {@code _shard_doc} under a point in time when the
+ * index has none; never on {@code _id}, which would need fielddata. An
+ * instance handles one {@link #match} call at a time.
+ * <p>
+ * Throttling and unavailability (429, 502, 503, 504) are retried with
+ * exponential back-off and full jitter, whether the whole {@code _msearch}
+ * or a single search in it is refused.
+ */
+public class BatchedTitleMatcher {
+
+	static final int MAX_PHRASES_PER_QUERY = 1000;
+	static final int MAX_SEARCHES_PER_REQUEST = 100;
+	static final int MAX_HITS_PER_REQUEST = 20000;
+
+	private static final TimeValue PIT_KEEP_ALIVE = TimeValue.timeValueMinutes(5);
+	private static final int MAX_ATTEMPTS = 5;
+	private static final long BASE_BACKOFF_MILLIS = 200;
+
+	private final RestHighLevelClient client;
+	private final String index;
+	private final int pageSize;
+	private String sortField;
+	private String pointInTimeId;
+
+	public BatchedTitleMatcher(RestHighLevelClient client, String index, int pageSize) {
+		this.client = client;
+		this.index = index;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Returns, per main title, the ids of postings whose title matches the
+	 * main title or any of its other titles. Every main title is in the
+	 * result, with an empty set when nothing matched.
+	 */
+	public Map<String, Set<String>> match(Map<String, ? extends Collection<String>> titlesByRole)
+			throws IOException, InterruptedException {
+		Map<String, Set<String>> idsByRole = new LinkedHashMap<>();
+		Queue<TitleSearch> pending = new ArrayDeque<>();
+		titlesByRole.forEach((role, titles) -> {
+			idsByRole.put(role, new LinkedHashSet<>());
+			Set<String> phrases = new LinkedHashSet<>();
+			phrases.add(role);
+			if (titles != null) {
+				phrases.addAll(titles);
+			}
+			List<String> all = new ArrayList<>(phrases);
+			for (int from = 0; from < all.size(); from += MAX_PHRASES_PER_QUERY) {
+				pending.add(new TitleSearch(role, all.subList(from, Math.min(all.size(), from + MAX_PHRASES_PER_QUERY))));
+			}
+		});
+
+		sortField = PostingFieldTypes.load(client, index).uniqueSortField();
+		if (PostingFieldTypes.SHARD_DOC.equals(sortField)) {
+			pointInTimeId = client.openPointInTime(new OpenPointInTimeRequest(index).keepAlive(PIT_KEEP_ALIVE),
+					RequestOptions.DEFAULT).getPointInTimeId();
+		}
+		try {
+			matchAll(pending, idsByRole);
+		} finally {
+			if (pointInTimeId != null) {
+				client.closePointInTime(new ClosePointInTimeRequest(pointInTimeId), RequestOptions.DEFAULT);
+				pointInTimeId = null;
+			}
+		}
+		return idsByRole;
+	}
+
+	private void matchAll(Queue<TitleSearch> pending, Map<String, Set<String>> idsByRole)
+			throws IOException, InterruptedException {
+		int searchesPerRequest = Math.max(1, Math.min(MAX_SEARCHES_PER_REQUEST, MAX_HITS_PER_REQUEST / pageSize));
+		while (!pending.isEmpty()) {
+			List<TitleSearch> round = new ArrayList<>();
+			MultiSearchRequest request = new MultiSearchRequest();
+			while (!pending.isEmpty() && round.size() < searchesPerRequest) {
+				TitleSearch search = pending.poll();
+				round.add(search);
+				request.add(search.request());
+			}
+
+			MultiSearchResponse response = msearch(request);
+			MultiSearchResponse.Item[] items = response.getResponses();
+			int retryAttempt = 0;
+			for (int i = 0; i < items.length; i++) {
+				TitleSearch search = round.get(i);
+				if (items[i].isFailure()) {
+					RestStatus status = ExceptionsHelper.status(items[i].getFailure());
+					if (!isRetryable(status) || ++search.attempts >= MAX_ATTEMPTS) {
+						throw new IOException("Title search for " + search.role + " failed", items[i].getFailure());
+					}
+					retryAttempt = Math.max(retryAttempt, search.attempts);
+					pending.add(search);
+					continue;
+				}
+
+				if (items[i].getResponse().pointInTimeId() != null) {
+					pointInTimeId = items[i].getResponse().pointInTimeId();
+				}
+				SearchHit[] hits = items[i].getResponse().getHits().getHits();
+				Set<String> ids = idsByRole.get(search.role);
+				for (SearchHit hit : hits) {
+					ids.add(hit.getId());
+				}
+				if (hits.length == pageSize) {
+					search.searchAfter = hits[hits.length - 1].getSortValues();
+					pending.add(search);
+				}
+			}
+			if (retryAttempt > 0) {
+				backOff(retryAttempt);
+			}
+		}
+	}
+
+	/** Sends the request, retrying it as a whole while it is throttled or the cluster is unavailable. */
+	private MultiSearchResponse msearch(MultiSearchRequest request) throws IOException, InterruptedException {
+		for (int attempt = 1;; attempt++) {
+			try {
+				return client.msearch(request, RequestOptions.DEFAULT);
+			} catch (ElasticsearchStatusException e) {
+				if (!isRetryable(e.status()) || attempt >= MAX_ATTEMPTS) {
+					throw e;
+				}
+				backOff(attempt);
+			}
+		}
+	}
+
+	/** Sleeps a random time up to the exponential back-off ceiling of {@code attempt}. */
+	private static void backOff(int attempt) throws InterruptedException {
+		Thread.sleep(ThreadLocalRandom.current().nextLong((BASE_BACKOFF_MILLIS << attempt) + 1));
+	}
+
+	private static boolean isRetryable(RestStatus status) {
+		return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.BAD_GATEWAY
+				|| status == RestStatus.SERVICE_UNAVAILABLE || status == RestStatus.GATEWAY_TIMEOUT;
+	}
+
+	/** One role's chunk of titles and how far its results have been read. */
+	private final class TitleSearch {
+		final String role;
+		final List<String> phrases;
+		Object[] searchAfter;
+		int attempts;
+
+		TitleSearch(String role, List<String> phrases) {
+			this.role = role;
+			this.phrases = phrases;
+		}
+
+		SearchRequest request() {
+			BoolQueryBuilder titles = QueryBuilders.boolQuery().minimumShouldMatch(1);
+			for (String phrase : phrases) {
+				titles.should(QueryBuilders.matchPhraseQuery("title", phrase));
+			}
+			SearchSourceBuilder source = new SearchSourceBuilder()
+					.query(QueryBuilders.constantScoreQuery(titles))
+					.fetchSource(false)
+					.size(pageSize)
+					.sort(sortField, SortOrder.ASC)
+					.trackTotalHits(false);
+			if (searchAfter != null) {
+				source.searchAfter(searchAfter);
+			}
+			if (pointInTimeId != null) {
+				source.pointInTimeBuilder(new PointInTimeBuilder(pointInTimeId).setKeepAlive(PIT_KEEP_ALIVE));
+				return new SearchRequest().source(source);
+			}
+			return new SearchRequest(index).source(source);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+/**
+ * Splits a stream of write requests into bulks bounded by action count and
+ * estimated body size, in the spirit of the client's {@code BulkProcessor}.
+ * A bulk is sent when either limit is reached or when the flush interval
+ * passes, and at most {@code maxInFlight} bulks run at once; {@link #add}
+ * blocks while that many are outstanding.
+ * <p>
+ * Every bulk logs its size and latency, and {@link #close()} logs the totals.
+ * Per-item outcomes are merged into {@link #getResult()}.
+ */
+public class BulkIndexingPipeline implements Closeable {
+
+	private final Function<BulkRequest, BulkResult> bulkExecutor;
+	private final int maxActions;
+	private final long maxBytes;
+	private final LambdaLogger logger;
+	private final Semaphore inFlight;
+	private final int maxInFlight;
+	private final ExecutorService workers;
+	private final ScheduledExecutorService flusher;
+
+	private final AtomicInteger batches = new AtomicInteger();
+	private final AtomicLong actions = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final long startNanos = System.nanoTime();
+	private final BulkResult result = new BulkResult();
+
+	private BulkRequest current = new BulkRequest();
+	private boolean closed;
+
+	public BulkIndexingPipeline(Function<BulkRequest, BulkResult> bulkExecutor, int maxActions, long maxBytes,
+			long flushIntervalMillis, int maxInFlight, LambdaLogger logger) {
+		this.bulkExecutor = bulkExecutor;
+		this.maxActions = maxActions;
+		this.maxBytes = maxBytes;
+		this.logger = logger;
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.workers = Executors.newFixedThreadPool(maxInFlight);
+		this.flusher = Executors.newSingleThreadScheduledExecutor();
+		flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void add(DocWriteRequest<?> request) {
+		if (closed) {
+			throw new IllegalStateException("Bulk pipeline is closed");
+		}
+		current.add(request);
+		if (current.numberOfActions() >= maxActions || current.estimatedSizeInBytes() >= maxBytes) {
+			flush();
+		}
+	}
+
+	public synchronized void flush() {
+		if (current.numberOfActions() == 0) {
+			return;
+		}
+		BulkRequest request = current;
+		current = new BulkRequest();
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for an in-flight bulk", e);
+		}
+		int batch = batches.incrementAndGet();
+		workers.execute(() -> {
+			try {
+				send(batch, request);
+			} finally {
+				inFlight.release();
+			}
+		});
+	}
+
+	/**
+	 * Sends whatever is buffered, waits for every in-flight bulk and logs the
+	 * totals for the run.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			flusher.shutdownNow();
+			flush();
+		}
+		workers.shutdown();
+		try {
+			inFlight.acquire(maxInFlight);
+			inFlight.release(maxInFlight);
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+		logger.log("Bulk pipeline done: " + batches.get() + " batches, " + actions.get() + " actions, "
+				+ bytes.get() / 1024 + " KB in " + elapsedMillis + " ms (" + actions.get() * 1000 / elapsedMillis
+				+ " actions/s), " + result);
+	}
+
+	/**
+	 * Combined result of every bulk sent so far; complete once the pipeline
+	 * is closed.
+	 */
+	public BulkResult getResult() {
+		return result;
+	}
+
+	private void send(int batch, BulkRequest request) {
+		int count = request.numberOfActions();
+		long size = request.estimatedSizeInBytes();
+		long start = System.nanoTime();
+		try {
+			result.merge(bulkExecutor.apply(request));
+		} catch (RuntimeException e) {
+			logger.log("Bulk batch " + batch + " failed: " + e);
+			request.requests().forEach(item -> result.addFailed(item.id()));
+		}
+		long tookMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		actions.addAndGet(count);
+		bytes.addAndGet(size);
+		logger.log("Bulk batch " + batch + ": " + count + " actions, " + size / 1024 + " KB in " + tookMillis
+				+ " ms (" + count * 1000L / tookMillis + " actions/s)");
+	}
+}
@@ -0,0 +1,62 @@
+package com.jobtrees.jobpostings.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of one or more bulk requests: how many items were written, how
+ * many were resent after a retryable failure, and which ids could not be
+ * written at all.
+ */
+public class BulkResult {
+
+	private int succeeded;
+	private int retried;
+	private final List<String> failedIds = new ArrayList<>();
+
+	synchronized void addSucceeded(int count) {
+		succeeded += count;
+	}
+
+	synchronized void addRetried(int count) {
+		retried += count;
+	}
+
+	synchronized void addFailed(String id) {
+		failedIds.add(id);
+	}
+
+	public synchronized void merge(BulkResult other) {
+		synchronized (other) {
+			succeeded += other.succeeded;
+			retried += other.retried;
+			failedIds.addAll(other.failedIds);
+		}
+	}
+
+	public synchronized int getSucceeded() {
+		return succeeded;
+	}
+
+	public synchronized int getRetried() {
+		return retried;
+	}
+
+	public synchronized int getFailed() {
+		return failedIds.size();
+	}
+
+	public synchronized List<String> getFailedIds() {
+		return Collections.unmodifiableList(new ArrayList<>(failedIds));
+	}
+
+	public synchronized boolean hasFailures() {
+		return !failedIds.isEmpty();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "BulkResult [succeeded=" + succeeded + ", retried=" + retried + ", failed=" + failedIds.size() + "]";
+	}
+}
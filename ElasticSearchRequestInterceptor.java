@@ -0,0 +1,259 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSSessionCredentials;
+
+/**
+ * Signs every request to the Elasticsearch domain with AWS Signature
+ * Version 4.
+ * <p>
+ * The signing key only depends on the secret key, the day, the region and
+ * the service, so it is derived once per day (or per credential rotation)
+ * instead of with four HMACs per request. Request bodies are hashed by
+ * streaming the entity into a digest rather than copying it, and credentials
+ * come from an {@link AWSCredentialsProvider}, so refreshed or temporary
+ * credentials are picked up without rebuilding the client.
+ */
+public class ElasticSearchRequestInterceptor implements HttpRequestInterceptor {
+
+	private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+	private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+	private static final String EMPTY_BODY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+
+	private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+	private static final ThreadLocal<Mac> HMAC = ThreadLocal.withInitial(() -> {
+		try {
+			return Mac.getInstance("HmacSHA256");
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+
+	private final String serviceName;
+	private final String regionName;
+	private final AWSCredentialsProvider credentialsProvider;
+
+	private volatile SigningKey signingKey;
+
+	public ElasticSearchRequestInterceptor(String serviceName, String regionName,
+			AWSCredentialsProvider credentialsProvider) {
+		this.serviceName = serviceName;
+		this.regionName = regionName;
+		this.credentialsProvider = credentialsProvider;
+	}
+
+	@Override
+	public void process(HttpRequest request, HttpContext context) throws IOException {
+		AWSCredentials credentials = credentialsProvider.getCredentials();
+		String amzDate = AMZ_DATE.format(ZonedDateTime.now(ZoneOffset.UTC));
+		String date = amzDate.substring(0, 8);
+		String token = credentials instanceof AWSSessionCredentials
+				? ((AWSSessionCredentials) credentials).getSessionToken()
+				: null;
+
+		request.removeHeaders("Authorization");
+		request.setHeader("X-Amz-Date", amzDate);
+		if (token != null) {
+			request.setHeader("X-Amz-Security-Token", token);
+		}
+
+		String signedHeaders = token != null ? "host;x-amz-date;x-amz-security-token" : "host;x-amz-date";
+		URI uri = URI.create(request.getRequestLine().getUri());
+		StringBuilder canonical = new StringBuilder(256);
+		canonical.append(request.getRequestLine().getMethod()).append('\n');
+		canonical.append(canonicalPath(uri.getRawPath())).append('\n');
+		canonical.append(canonicalQuery(uri.getRawQuery())).append('\n');
+		canonical.append("host:").append(host(request, context)).append('\n');
+		canonical.append("x-amz-date:").append(amzDate).append('\n');
+		if (token != null) {
+			canonical.append("x-amz-security-token:").append(token).append('\n');
+		}
+		canonical.append('\n').append(signedHeaders).append('\n');
+		canonical.append(payloadHash(request));
+
+		String scope = date + "/" + regionName + "/" + serviceName + "/aws4_request";
+		String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+				+ hex(SHA256.get().digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+		byte[] signature = hmac(signingKey(credentials, date), stringToSign);
+
+		request.setHeader("Authorization", ALGORITHM + " Credential=" + credentials.getAWSAccessKeyId() + "/" + scope
+				+ ", SignedHeaders=" + signedHeaders + ", Signature=" + hex(signature));
+	}
+
+	/**
+	 * Returns the cached key while the day and the secret key are unchanged,
+	 * deriving a new one otherwise.
+	 */
+	private byte[] signingKey(AWSCredentials credentials, String date) {
+		SigningKey cached = signingKey;
+		String secretKey = credentials.getAWSSecretKey();
+		if (cached != null && cached.date.equals(date) && cached.secretKey.equals(secretKey)) {
+			return cached.key;
+		}
+		byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+		key = hmac(key, regionName);
+		key = hmac(key, serviceName);
+		key = hmac(key, "aws4_request");
+		signingKey = new SigningKey(date, secretKey, key);
+		return key;
+	}
+
+	/**
+	 * Hashes the body by writing it into the digest. A non-repeatable entity
+	 * has to be buffered first so it can still be sent afterwards; the client
+	 * only sends repeatable ones.
+	 */
+	private static String payloadHash(HttpRequest request) throws IOException {
+		if (!(request instanceof HttpEntityEnclosingRequest)) {
+			return EMPTY_BODY_SHA256;
+		}
+		HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+		HttpEntity entity = enclosing.getEntity();
+		if (entity == null) {
+			return EMPTY_BODY_SHA256;
+		}
+		if (!entity.isRepeatable()) {
+			entity = new BufferedHttpEntity(entity);
+			enclosing.setEntity(entity);
+		}
+		MessageDigest digest = SHA256.get();
+		digest.reset();
+		entity.writeTo(new OutputStream() {
+			@Override
+			public void write(int b) {
+				digest.update((byte) b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				digest.update(b, off, len);
+			}
+		});
+		return hex(digest.digest());
+	}
+
+	private static String host(HttpRequest request, HttpContext context) {
+		Header host = request.getFirstHeader("Host");
+		if (host != null) {
+			return host.getValue();
+		}
+		HttpHost target = (HttpHost) context.getAttribute(HttpCoreContext.HTTP_TARGET_HOST);
+		return target.getPort() == -1 ? target.getHostName() : target.getHostName() + ":" + target.getPort();
+	}
+
+	/**
+	 * Every service but S3 expects the path URI-encoded twice: the path as it
+	 * is sent, already encoded once, is encoded again, so {@code a%20b} is
+	 * signed as {@code a%2520b}. The server does the same with the path it
+	 * receives, so the raw path is used as is rather than decoded first.
+	 */
+	private static String canonicalPath(String rawPath) {
+		if (rawPath == null || rawPath.isEmpty()) {
+			return "/";
+		}
+		return encode(rawPath, false);
+	}
+
+	private static String canonicalQuery(String rawQuery) {
+		if (rawQuery == null || rawQuery.isEmpty()) {
+			return "";
+		}
+		List<String> params = new ArrayList<>();
+		for (String param : rawQuery.split("&")) {
+			if (param.isEmpty()) {
+				continue;
+			}
+			int eq = param.indexOf('=');
+			String name = eq < 0 ? param : param.substring(0, eq);
+			String value = eq < 0 ? "" : param.substring(eq + 1);
+			params.add(encode(decode(name), true) + "=" + encode(decode(value), true));
+		}
+		params.sort(null);
+		return String.join("&", params);
+	}
+
+	private static String decode(String value) {
+		return URLDecoder.decode(value.replace("+", "%2B"), StandardCharsets.UTF_8);
+	}
+
+	/** RFC 3986 encoding as SigV4 expects; {@code /} is kept in paths. */
+	private static String encode(String value, boolean encodeSlash) {
+		StringBuilder encoded = new StringBuilder(value.length() + 16);
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			char c = (char) (b & 0xFF);
+			if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_'
+					|| c == '.' || c == '~' || (c == '/' && !encodeSlash)) {
+				encoded.append(c);
+			} else {
+				encoded.append('%').append(HEX_UPPER[c >> 4]).append(HEX_UPPER[c & 0xF]);
+			}
+		}
+		return encoded.toString();
+	}
+
+	private static byte[] hmac(byte[] key, String data) {
+		Mac mac = HMAC.get();
+		try {
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+		return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String hex(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+			hex[2 * i + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(hex);
+	}
+
+	private static final class SigningKey {
+		final String date;
+		final String secretKey;
+		final byte[] key;
+
+		SigningKey(String date, String secretKey, byte[] key) {
+			this.date = date;
+			this.secretKey = secretKey;
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the URLs changed during a run and submits them to every IndexNow
+ * endpoint in as few requests as possible: up to 10,000 URLs per request,
+ * all endpoints in parallel over one pooled {@link HttpClient}. 429 and 5xx
+ * responses and I/O failures are retried with back-off, honouring
+ * {@code Retry-After} up to {@link #MAX_RETRY_DELAY_MILLIS}; a batch asked to
+ * wait longer is given up. {@link #submit()} returns within
+ * {@link #SUBMIT_TIMEOUT}, counting batches still pending then as failed, so
+ * a slow or throttling endpoint cannot hold up the run that submits.
+ */
+public class IndexNowSubmitter {
+
+    public static final int MAX_URLS_PER_REQUEST = 10000;
+
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration SUBMIT_TIMEOUT = Duration.ofSeconds(60);
+
+    private final String host;
+    private final String key;
+    private final List<String> endpoints;
+    private final HttpClient httpClient;
+    private final Set<String> pending = new LinkedHashSet<>();
+
+    public IndexNowSubmitter(String host, String key, List<String> endpoints) {
+        this.host = host;
+        this.key = key;
+        this.endpoints = endpoints;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    /** Queues a URL for the next {@link #submit()}; duplicates are sent once. */
+    public synchronized void add(String url) {
+        pending.add(url);
+    }
+
+    /**
+     * Sends everything queued so far and waits for every endpoint to finish,
+     * at most {@link #SUBMIT_TIMEOUT}. Returns one summary per endpoint.
+     */
+    public Map<String, EndpointResult> submit() {
+        List<String> urls;
+        synchronized (this) {
+            urls = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        Map<String, EndpointResult> results = new LinkedHashMap<>();
+        List<CompletableFuture<Void>> requests = new ArrayList<>();
+        long deadline = System.nanoTime() + SUBMIT_TIMEOUT.toNanos();
+        for (String endpoint : endpoints) {
+            EndpointResult result = new EndpointResult(endpoint);
+            results.put(endpoint, result);
+            for (int from = 0; from < urls.size(); from += MAX_URLS_PER_REQUEST) {
+                List<String> batch = urls.subList(from, Math.min(urls.size(), from + MAX_URLS_PER_REQUEST));
+                HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint))
+                        .timeout(REQUEST_TIMEOUT)
+                        .header("Content-Type", "application/json; charset=utf-8")
+                        .POST(HttpRequest.BodyPublishers.ofString(payload(batch)))
+                        .build();
+                requests.add(send(request, 1, INITIAL_BACKOFF_MILLIS, deadline)
+                        .orTimeout(SUBMIT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                        .handle((status, error) -> {
+                            result.record(batch.size(), status, error);
+                            return null;
+                        }));
+            }
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+        return results;
+    }
+
+    /**
+     * Sends {@code request}, retrying while attempts are left and the retry
+     * would still start before {@code deadline} (a {@link System#nanoTime()}
+     * value).
+     */
+    private CompletableFuture<Integer> send(HttpRequest request, int attempt, long backoffMillis, long deadline) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    if (error != null) {
+                        // HttpTimeoutException is an IOException too.
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        return cause instanceof IOException && canRetry(attempt, backoffMillis, deadline)
+                                ? retryAfter(request, attempt, backoffMillis, deadline)
+                                : CompletableFuture.<Integer>failedFuture(cause);
+                    }
+                    int status = response.statusCode();
+                    long delayMillis = Math.max(retryAfterMillis(response), backoffMillis);
+                    if ((status == 429 || status >= 500) && canRetry(attempt, delayMillis, deadline)) {
+                        return retryAfter(request, attempt, delayMillis, deadline);
+                    }
+                    return CompletableFuture.completedFuture(status);
+                })
+                .thenCompose(result -> result);
+    }
+
+    private static boolean canRetry(int attempt, long delayMillis, long deadline) {
+        return attempt < MAX_ATTEMPTS && delayMillis <= MAX_RETRY_DELAY_MILLIS
+                && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) < deadline;
+    }
+
+    /**
+     * The delay a {@code Retry-After} header asks for, given either as
+     * seconds or as an HTTP-date; 0 when it is missing or unreadable.
+     */
+    static long retryAfterMillis(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").map(String::trim).orElse("");
+        if (value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value)) * 1000;
+        } catch (NumberFormatException e) {
+            // Not delta-seconds; try the HTTP-date form.
+        }
+        try {
+            Instant retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, Duration.between(Instant.now(), retryAt).toMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private CompletableFuture<Integer> retryAfter(HttpRequest request, int attempt, long delayMillis,
+            long deadline) {
+        return CompletableFuture.supplyAsync(() -> null,
+                        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> send(request, attempt + 1,
+                        Math.min(delayMillis * 2, MAX_RETRY_DELAY_MILLIS), deadline));
+    }
+
+    private String payload(List<String> urls) {
+        StringBuilder json = new StringBuilder(64 + urls.size() * 64);
+        json.append("{\"host\":\"").append(escape(host))
+                .append("\",\"key\":\"").append(escape(key))
+                .append("\",\"keyLocation\":\"https://").append(escape(host)).append('/').append(escape(key))
+                .append(".txt\",\"urlList\":[");
+        for (int i = 0; i < urls.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(escape(urls.get(i))).append('"');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /** Outcome of one run's submissions to a single endpoint. */
+    public static class EndpointResult {
+
+        private final String endpoint;
+        private int requests;
+        private int acceptedUrls;
+        private int failedRequests;
+        private Integer lastStatus;
+        private Throwable lastError;
+
+        EndpointResult(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        synchronized void record(int urls, Integer status, Throwable error) {
+            requests++;
+            if (error == null) {
+                lastStatus = status;
+            } else {
+                lastError = error;
+            }
+            if (status != null && status >= 200 && status < 300) {
+                acceptedUrls += urls;
+            } else {
+                failedRequests++;
+            }
+        }
+
+        public synchronized boolean isSuccessful() {
+            return failedRequests == 0;
+        }
+
+        public synchronized int getAcceptedUrls() {
+            return acceptedUrls;
+        }
+
+        public synchronized int getFailedRequests() {
+            return failedRequests;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return endpoint + ": " + requests + " requests, " + acceptedUrls + " URLs accepted, " + failedRequests
+                    + " failed" + (lastStatus != null ? ", last status " + lastStatus : "")
+                    + (lastError != null ? ", last error " + lastError : "");
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.search.SearchHit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.jobtrees.jobpostings.model.ESJob;
+import com.jobtrees.jobpostings.model.Job;
+
+/**
+ * Column-oriented copy of the job postings in an index, built for full-index
+ * comparisons without holding a map and an object per posting.
+ * <p>
+ * Titles, companies, cities and postcodes repeat heavily, so each column
+ * stores an {@code int} code into a per-column dictionary. Numeric posting
+ * dates are kept as epoch millis in a {@code long[]}. Rows are found by id
+ * through an open-addressing index. The snapshot is filled by streaming each
+ * hit's {@code _source} bytes through a JSON parser, so no per-hit map is
+ * ever built.
+ * <p>
+ * {@link #jobs()} and {@link #esJobs()} are read-only set views that create
+ * model objects only while they are iterated; {@code contains} looks the id
+ * up in the index instead of scanning.
+ */
+public class JobSnapshot {
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	/** Posting date of a row whose date is missing or not numeric. */
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private static final Model<Job> JOB = new Model<>(Job.class, Job::new, Job::getId, Job::setImportdate,
+			Job::setTitle, Job::setCompany, Job::setCity, Job::setZip);
+	private static final Model<ESJob> ES_JOB = new Model<>(ESJob.class, ESJob::new, ESJob::getId,
+			ESJob::setImportdate, ESJob::setTitle, ESJob::setCompany, ESJob::setCity, ESJob::setZip);
+
+	private final String[] ids;
+	private final int[] titles;
+	private final int[] companies;
+	private final int[] cities;
+	private final int[] postcodes;
+	private final long[] postingDates;
+	private final int[] postingDateTexts;
+	private final String[] titleDictionary;
+	private final String[] companyDictionary;
+	private final String[] cityDictionary;
+	private final String[] postcodeDictionary;
+	private final String[] dateDictionary;
+	private final int[] idIndex;
+
+	private JobSnapshot(Builder builder) {
+		int size = builder.size;
+		ids = Arrays.copyOf(builder.ids, size);
+		titles = Arrays.copyOf(builder.titles, size);
+		companies = Arrays.copyOf(builder.companies, size);
+		cities = Arrays.copyOf(builder.cities, size);
+		postcodes = Arrays.copyOf(builder.postcodes, size);
+		postingDates = Arrays.copyOf(builder.postingDates, size);
+		postingDateTexts = Arrays.copyOf(builder.postingDateTexts, size);
+		titleDictionary = builder.titleDictionary.toArray();
+		companyDictionary = builder.companyDictionary.toArray();
+		cityDictionary = builder.cityDictionary.toArray();
+		postcodeDictionary = builder.postcodeDictionary.toArray();
+		dateDictionary = builder.dateDictionary.toArray();
+		idIndex = builder.idIndex;
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	/** Row of the posting with this id, or -1 if it is not in the snapshot. */
+	public int indexOf(String id) {
+		int mask = idIndex.length - 1;
+		for (int slot = id.hashCode() & mask;; slot = (slot + 1) & mask) {
+			int row = idIndex[slot] - 1;
+			if (row < 0) {
+				return -1;
+			}
+			if (ids[row].equals(id)) {
+				return row;
+			}
+		}
+	}
+
+	public boolean contains(String id) {
+		return indexOf(id) >= 0;
+	}
+
+	public String getId(int row) {
+		return ids[row];
+	}
+
+	public String getTitle(int row) {
+		return decode(titleDictionary, titles[row]);
+	}
+
+	public String getCompany(int row) {
+		return decode(companyDictionary, companies[row]);
+	}
+
+	public String getCity(int row) {
+		return decode(cityDictionary, cities[row]);
+	}
+
+	public String getPostcode(int row) {
+		return decode(postcodeDictionary, postcodes[row]);
+	}
+
+	/** Posting date in epoch millis, or {@link Long#MIN_VALUE} if missing or not numeric. */
+	public long getPostingDateMillis(int row) {
+		return postingDates[row];
+	}
+
+	/** Posting date as it appeared in {@code _source}. */
+	public String getPostingDate(int row) {
+		return postingDates[row] != NO_DATE ? Long.toString(postingDates[row])
+				: decode(dateDictionary, postingDateTexts[row]);
+	}
+
+	/**
+	 * The postings as {@link Job}s, created while iterating. The set is
+	 * read-only: {@code add} and {@code remove} throw
+	 * {@link UnsupportedOperationException}; copy it into a {@code HashSet}
+	 * to modify it.
+	 */
+	public Set<Job> jobs() {
+		return new RowSet<>(JOB);
+	}
+
+	/**
+	 * The postings as {@link ESJob}s, created while iterating. Read-only, like
+	 * {@link #jobs()}.
+	 */
+	public Set<ESJob> esJobs() {
+		return new RowSet<>(ES_JOB);
+	}
+
+	/** Creates the row's model object, setting only the columns that have a value. */
+	private <T> T toModel(Model<T> model, int row) {
+		T job = model.create.apply(ids[row]);
+		setIfPresent(model.importdate, job, getPostingDate(row));
+		setIfPresent(model.title, job, getTitle(row));
+		setIfPresent(model.company, job, getCompany(row));
+		setIfPresent(model.city, job, getCity(row));
+		setIfPresent(model.zip, job, getPostcode(row));
+		return job;
+	}
+
+	private static <T> void setIfPresent(BiConsumer<T, String> setter, T job, String value) {
+		if (value != null) {
+			setter.accept(job, value);
+		}
+	}
+
+	private static String decode(String[] dictionary, int code) {
+		return code < 0 ? null : dictionary[code];
+	}
+
+	/** How a row becomes one of the model classes, which share no common type. */
+	private static final class Model<T> {
+		final Class<T> type;
+		final Function<String, T> create;
+		final Function<T, String> id;
+		final BiConsumer<T, String> importdate;
+		final BiConsumer<T, String> title;
+		final BiConsumer<T, String> company;
+		final BiConsumer<T, String> city;
+		final BiConsumer<T, String> zip;
+
+		Model(Class<T> type, Function<String, T> create, Function<T, String> id, BiConsumer<T, String> importdate,
+				BiConsumer<T, String> title, BiConsumer<T, String> company, BiConsumer<T, String> city,
+				BiConsumer<T, String> zip) {
+			this.type = type;
+			this.create = create;
+			this.id = id;
+			this.importdate = importdate;
+			this.title = title;
+			this.company = company;
+			this.city = city;
+			this.zip = zip;
+		}
+	}
+
+	private final class RowSet<T> extends AbstractSet<T> {
+
+		private final Model<T> model;
+
+		RowSet(Model<T> model) {
+			this.model = model;
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
+
+		/**
+		 * Finds the row by id, then compares with the model's own
+		 * {@code equals}, as the {@code HashSet} this replaced did.
+		 */
+		@Override
+		public boolean contains(Object o) {
+			if (!model.type.isInstance(o)) {
+				return false;
+			}
+			String id = model.id.apply(model.type.cast(o));
+			int row = id == null ? -1 : indexOf(id);
+			return row >= 0 && toModel(model, row).equals(o);
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+				private int row;
+
+				@Override
+				public boolean hasNext() {
+					return row < ids.length;
+				}
+
+				@Override
+				public T next() {
+					if (row >= ids.length) {
+						throw new NoSuchElementException();
+					}
+					return toModel(model, row++);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Collects pages of hits into columns. {@link #addPage} may be called from
+	 * several threads at once, as {@link SlicedScrollReader} does: each page is
+	 * parsed on the calling thread and appended under a lock.
+	 */
+	public static class Builder {
+
+		private String[] ids = new String[1024];
+		private int[] titles = new int[1024];
+		private int[] companies = new int[1024];
+		private int[] cities = new int[1024];
+		private int[] postcodes = new int[1024];
+		private long[] postingDates = new long[1024];
+		private int[] postingDateTexts = new int[1024];
+		private int size;
+		private int[] idIndex = new int[2048];
+
+		private final Dictionary titleDictionary = new Dictionary();
+		private final Dictionary companyDictionary = new Dictionary();
+		private final Dictionary cityDictionary = new Dictionary();
+		private final Dictionary postcodeDictionary = new Dictionary();
+		private final Dictionary dateDictionary = new Dictionary();
+
+		public void addPage(SearchHit[] page) {
+			List<ParsedHit> parsed = new ArrayList<>(page.length);
+			for (SearchHit hit : page) {
+				parsed.add(parse(hit));
+			}
+			synchronized (this) {
+				for (ParsedHit hit : parsed) {
+					append(hit);
+				}
+			}
+		}
+
+		public synchronized JobSnapshot build() {
+			return new JobSnapshot(this);
+		}
+
+		/**
+		 * Reads the fields the snapshot keeps straight from the source bytes;
+		 * everything else is skipped without being materialized.
+		 */
+		private static ParsedHit parse(SearchHit hit) {
+			ParsedHit parsed = new ParsedHit(hit.getId());
+			if (!hit.hasSource()) {
+				return parsed;
+			}
+			BytesRef source = hit.getSourceRef().toBytesRef();
+			try (JsonParser parser = JSON.createParser(source.bytes, source.offset, source.length)) {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					return parsed;
+				}
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String field = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					switch (field) {
+					case "title":
+						parsed.title = text(parser, value);
+						break;
+					case "company":
+						parsed.company = text(parser, value);
+						break;
+					case "city":
+						parsed.city = text(parser, value);
+						break;
+					case "postcode":
+						parsed.postcode = text(parser, value);
+						break;
+					case "postingDate":
+						if (value == JsonToken.VALUE_NUMBER_INT) {
+							parsed.postingDate = parser.getLongValue();
+						} else {
+							parsed.postingDateText = text(parser, value);
+						}
+						break;
+					default:
+						parser.skipChildren();
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not parse source of " + hit.getId(), e);
+			}
+			return parsed;
+		}
+
+		private static String text(JsonParser parser, JsonToken value) throws IOException {
+			if (value == JsonToken.VALUE_NULL) {
+				return null;
+			}
+			if (value.isScalarValue()) {
+				return parser.getText();
+			}
+			parser.skipChildren();
+			return null;
+		}
+
+		private void append(ParsedHit hit) {
+			if (!putId(hit.id, size)) {
+				return;
+			}
+			if (size == ids.length) {
+				grow();
+			}
+			ids[size] = hit.id;
+			titles[size] = titleDictionary.encode(hit.title);
+			companies[size] = companyDictionary.encode(hit.company);
+			cities[size] = cityDictionary.encode(hit.city);
+			postcodes[size] = postcodeDictionary.encode(hit.postcode);
+			postingDates[size] = hit.postingDate;
+			postingDateTexts[size] = dateDictionary.encode(hit.postingDateText);
+			size++;
+		}
+
+		/** Returns false if the id is already present. */
+		private boolean putId(String id, int row) {
+			if ((size + 1) * 2 > idIndex.length) {
+				rehash(idIndex.length * 2);
+			}
+			int mask = idIndex.length - 1;
+			for (int slot = id.hashCode() & mask;; slot = (slot + 1) & mask) {
+				int existing = idIndex[slot] - 1;
+				if (existing < 0) {
+					idIndex[slot] = row + 1;
+					return true;
+				}
+				if (ids[existing].equals(id)) {
+					return false;
+				}
+			}
+		}
+
+		private void rehash(int capacity) {
+			int[] rehashed = new int[capacity];
+			int mask = capacity - 1;
+			for (int row = 0; row < size; row++) {
+				int slot = ids[row].hashCode() & mask;
+				while (rehashed[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				rehashed[slot] = row + 1;
+			}
+			idIndex = rehashed;
+		}
+
+		private void grow() {
+			int capacity = ids.length * 2;
+			ids = Arrays.copyOf(ids, capacity);
+			titles = Arrays.copyOf(titles, capacity);
+			companies = Arrays.copyOf(companies, capacity);
+			cities = Arrays.copyOf(cities, capacity);
+			postcodes = Arrays.copyOf(postcodes, capacity);
+			postingDates = Arrays.copyOf(postingDates, capacity);
+			postingDateTexts = Arrays.copyOf(postingDateTexts, capacity);
+		}
+	}
+
+	private static final class ParsedHit {
+		final String id;
+		String title;
+		String company;
+		String city;
+		String postcode;
+		long postingDate = NO_DATE;
+		String postingDateText;
+
+		ParsedHit(String id) {
+			this.id = id;
+		}
+	}
+
+	/** Assigns each distinct value a code; null is -1. */
+	private static final class Dictionary {
+		private final Map<String, Integer> codes = new HashMap<>();
+		private final List<String> values = new ArrayList<>();
+
+		int encode(String value) {
+			if (value == null) {
+				return -1;
+			}
+			Integer code = codes.get(value);
+			if (code == null) {
+				code = values.size();
+				codes.put(value, code);
+				values.add(value);
+			}
+			return code;
+		}
+
+		String[] toArray() {
+			return values.toArray(new String[0]);
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package com.jobtrees.jobpostings.service;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Turns the date values found on postings into W3C datetimes for
+ * {@code <lastmod>}: {@code yyyy-MM-ddTHH:mm:ssZ} in UTC, or
+ * {@code yyyy-MM-dd} when the input has no time.
+ * <p>
+ * Epoch millis (as a number or a string of digits) and ISO-8601 strings are
+ * parsed by hand, allocating only the result; a value that is already in
+ * the output form is returned as is. Anything else is tried as an RFC 1123
+ * date, and a value that still cannot be read gives null, so the entry is
+ * written without a {@code <lastmod>} rather than with an invalid one.
+ */
+public final class LastmodFormatter {
+
+    private static final DateTimeFormatter RFC_1123 = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private LastmodFormatter() {
+    }
+
+    public static String normalize(Object value) {
+        if (value instanceof Number) {
+            return fromEpochMillis(((Number) value).longValue());
+        }
+        return value == null ? null : normalize(value.toString());
+    }
+
+    public static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+        if (isDigits(value, start, end)) {
+            return end - start > 18 ? null : fromEpochMillis(parseDigits(value, start, end));
+        }
+        String iso = fromIso(value, start, end);
+        if (iso != null) {
+            return iso;
+        }
+        try {
+            return fromEpochMillis(ZonedDateTime.parse(value.substring(start, end), RFC_1123).toInstant()
+                    .toEpochMilli());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the later of two lastmod values, normalized; null if neither
+     * can be read. Comparing the raw strings would rank e.g. epoch millis
+     * against ISO dates by their characters. A date without a time counts as
+     * the start of that day in UTC.
+     */
+    public static String newer(String a, String b) {
+        String first = normalize(a);
+        String second = normalize(b);
+        if (first == null || second == null) {
+            return first == null ? second : first;
+        }
+        // Normalized values have fixed-width fields, so once both carry a
+        // time their text orders like the instants they denote.
+        return atStartOfDay(second).compareTo(atStartOfDay(first)) > 0 ? second : first;
+    }
+
+    private static String atStartOfDay(String normalized) {
+        return normalized.length() == 10 ? normalized + "T00:00:00Z" : normalized;
+    }
+
+    public static String fromEpochMillis(long epochMillis) {
+        long seconds = Math.floorDiv(epochMillis, 1000);
+        long days = Math.floorDiv(seconds, SECONDS_PER_DAY);
+        int secondOfDay = (int) (seconds - days * SECONDS_PER_DAY);
+        return format(days, secondOfDay);
+    }
+
+    /**
+     * Reads {@code yyyy-MM-dd} optionally followed by {@code T} (or a space),
+     * {@code HH:mm}, {@code :ss}, a fraction and a zone ({@code Z},
+     * {@code +HH}, {@code +HHmm} or {@code +HH:mm}, or the same with {@code -};
+     * none means UTC).
+     */
+    private static String fromIso(String value, int start, int end) {
+        if (end - start < 10 || value.charAt(start + 4) != '-' || value.charAt(start + 7) != '-') {
+            return null;
+        }
+        int year = digits(value, start, 4);
+        int month = digits(value, start + 5, 2);
+        int day = digits(value, start + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return null;
+        }
+        int pos = start + 10;
+        if (pos == end) {
+            return end - start == value.length() ? value : value.substring(start, end);
+        }
+
+        char separator = value.charAt(pos);
+        if ((separator != 'T' && separator != ' ') || end - pos < 6 || value.charAt(pos + 3) != ':') {
+            return null;
+        }
+        int hour = digits(value, pos + 1, 2);
+        int minute = digits(value, pos + 4, 2);
+        int second = 0;
+        pos += 6;
+        if (pos < end && value.charAt(pos) == ':') {
+            second = end - pos >= 3 ? digits(value, pos + 1, 2) : -1;
+            pos += 3;
+        }
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return null;
+        }
+        if (pos < end && (value.charAt(pos) == '.' || value.charAt(pos) == ',')) {
+            pos++;
+            while (pos < end && isDigit(value.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        int offsetSeconds = 0;
+        boolean utc = pos == end;
+        if (!utc) {
+            char zone = value.charAt(pos);
+            if (zone == 'Z' || zone == 'z') {
+                utc = true;
+                pos++;
+            } else if (zone == '+' || zone == '-') {
+                int zoneLength = end - pos - 1;
+                int offsetHours = zoneLength >= 2 ? digits(value, pos + 1, 2) : -1;
+                int offsetMinutes = 0;
+                if (zoneLength == 4) {
+                    offsetMinutes = digits(value, pos + 3, 2);
+                } else if (zoneLength == 5 && value.charAt(pos + 3) == ':') {
+                    offsetMinutes = digits(value, pos + 4, 2);
+                } else if (zoneLength != 2) {
+                    return null;
+                }
+                if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+                    return null;
+                }
+                offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (zone == '-' ? -1 : 1);
+                pos = end;
+            }
+            if (pos != end) {
+                return null;
+            }
+        }
+
+        if (utc && second < 60 && end - start == 20 && start == 0 && end == value.length()
+                && value.charAt(10) == 'T' && value.charAt(16) == ':' && value.charAt(19) == 'Z') {
+            return value;
+        }
+        long seconds = daysFromCivil(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60
+                + Math.min(second, 59) - offsetSeconds;
+        long days = Math.floorDiv(seconds, SECONDS_PER_DAY);
+        return format(days, (int) (seconds - days * SECONDS_PER_DAY));
+    }
+
+    private static String format(long epochDay, int secondOfDay) {
+        // Civil-from-days over 400-year eras (proleptic Gregorian).
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return null;
+        }
+
+        char[] out = new char[20];
+        put(out, 0, (int) year, 4);
+        out[4] = '-';
+        put(out, 5, month, 2);
+        out[7] = '-';
+        put(out, 8, day, 2);
+        out[10] = 'T';
+        put(out, 11, secondOfDay / 3600, 2);
+        out[13] = ':';
+        put(out, 14, secondOfDay / 60 % 60, 2);
+        out[16] = ':';
+        put(out, 17, secondOfDay % 60, 2);
+        out[19] = 'Z';
+        return new String(out);
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        int yearOfEra = (int) (y - era * 400);
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+        case 2:
+            return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    private static void put(char[] out, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /** The non-negative number in {@code count} digits at {@code offset}, or -1. */
+    private static int digits(String value, int offset, int count) {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigits(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseDigits(String value, int start, int end) {
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
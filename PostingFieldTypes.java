@@ -0,0 +1,126 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetFieldMappingsRequest;
+import org.elasticsearch.client.indices.GetFieldMappingsResponse;
+
+/**
+ * How the posting fields that queries depend on are mapped in an index. The
+ * postings are indexed with dynamic mapping, so a field may be a keyword, a
+ * number, or text with a {@code .keyword} subfield depending on what the
+ * first document held; queries pick what each field supports instead of
+ * assuming one mapping. Read once per run with a single field-mapping
+ * request.
+ */
+public class PostingFieldTypes {
+
+    /**
+     * The implicit tiebreaker of a point in time, used to sort on when no
+     * unique field has doc values. Requires a point in time.
+     */
+    public static final String SHARD_DOC = "_shard_doc";
+
+    private static final String[] FIELDS = { "id", "id.keyword", "status", "status.keyword", "updatedDate",
+            "postingDate" };
+
+    private static final String[] NUMERIC_TYPES = { "long", "integer", "short", "byte", "unsigned_long" };
+
+    private final Map<String, String> types;
+
+    private PostingFieldTypes(Map<String, String> types) {
+        this.types = types;
+    }
+
+    /**
+     * Reads the mapping of the posting fields in {@code index}, which may be
+     * an alias. A field mapped differently in the indices behind it counts
+     * as unmapped.
+     */
+    public static PostingFieldTypes load(RestHighLevelClient client, String index) throws IOException {
+        GetFieldMappingsResponse response = client.indices().getFieldMapping(
+                new GetFieldMappingsRequest().indices(index).fields(FIELDS), RequestOptions.DEFAULT);
+        Map<String, String> types = new HashMap<>();
+        Set<String> unusable = new HashSet<>();
+        for (Map<String, GetFieldMappingsResponse.FieldMappingMetadata> fields : response.mappings().values()) {
+            for (String field : FIELDS) {
+                String type = typeOf(fields.get(field));
+                if (type == null || !type.equals(types.getOrDefault(field, type))) {
+                    unusable.add(field);
+                } else {
+                    types.put(field, type);
+                }
+            }
+        }
+        types.keySet().removeAll(unusable);
+        return new PostingFieldTypes(Collections.unmodifiableMap(types));
+    }
+
+    /** The field's type, e.g. {@code keyword} or {@code text}; null if unmapped. */
+    public String typeOf(String field) {
+        return types.get(field);
+    }
+
+    /**
+     * A field to sort postings on that is unique per posting and has doc
+     * values: {@code id} when it is a keyword or a number, else its
+     * {@code .keyword} subfield. Postings are indexed with their {@code id}
+     * as {@code _id}, so either is unique. Falls back to {@link #SHARD_DOC}
+     * when neither is mapped that way; sorting on {@code _id} would load it
+     * into fielddata instead.
+     */
+    public String uniqueSortField() {
+        String idType = typeOf("id");
+        if ("keyword".equals(idType) || isNumeric(idType)) {
+            return "id";
+        }
+        if ("keyword".equals(typeOf("id.keyword"))) {
+            return "id.keyword";
+        }
+        return SHARD_DOC;
+    }
+
+    /**
+     * The field itself if it is a keyword, else its {@code .keyword}
+     * subfield if it has one; null when only text is mapped, which can only
+     * be matched by analyzed terms, not by exact value.
+     */
+    public String keywordField(String field) {
+        if ("keyword".equals(typeOf(field))) {
+            return field;
+        }
+        return "keyword".equals(typeOf(field + ".keyword")) ? field + ".keyword" : null;
+    }
+
+    /** Whether the field is date-mapped, so it has date doc values and supports date ranges. */
+    public boolean isDate(String field) {
+        String type = typeOf(field);
+        return "date".equals(type) || "date_nanos".equals(type);
+    }
+
+    private static boolean isNumeric(String type) {
+        for (String numeric : NUMERIC_TYPES) {
+            if (numeric.equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String typeOf(GetFieldMappingsResponse.FieldMappingMetadata mapping) {
+        if (mapping == null || mapping.sourceAsMap().isEmpty()) {
+            return null;
+        }
+        // Keyed by the leaf name, e.g. "keyword" for "id.keyword".
+        Object definition = mapping.sourceAsMap().values().iterator().next();
+        return definition instanceof Map ? (String) ((Map<String, Object>) definition).get("type") : null;
+    }
+}
@@ -0,0 +1,223 @@
+package com.jobtrees.jobpostings.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps rarely changing reference data in memory for the life of the Lambda
+ * container.
+ * <p>
+ * A value is served from memory until it is {@code ttlMillis} old. Once it is
+ * {@code refreshAfterMillis} old, the next read still gets the cached value
+ * but starts a reload on {@code refreshExecutor}; a failed reload keeps the
+ * old value until it expires, and the next reload is only tried another
+ * {@code refreshAfterMillis} later. Once the executor rejects reloads, e.g.
+ * after it was shut down, cached values are served until they expire.
+ * Concurrent misses for the same key share one
+ * load. When more than {@code maxEntries} keys are cached, the least recently
+ * read one is dropped.
+ */
+public class ReferenceDataCache<K, V> {
+
+	/** Loads the value for a key; may block and may fail. */
+	public interface Loader<V> {
+		V load() throws Exception;
+	}
+
+	private final int maxEntries;
+	private final long ttlNanos;
+	private final long refreshAfterNanos;
+	private final Executor refreshExecutor;
+
+	private final Map<K, Cached<V>> values = new ConcurrentHashMap<>();
+	private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder loadFailures = new LongAdder();
+	private final LongAdder loadNanos = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public ReferenceDataCache(int maxEntries, long ttlMillis, long refreshAfterMillis, Executor refreshExecutor) {
+		this.maxEntries = maxEntries;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.refreshAfterNanos = TimeUnit.MILLISECONDS.toNanos(refreshAfterMillis);
+		this.refreshExecutor = refreshExecutor;
+	}
+
+	/**
+	 * Returns the cached value for {@code key}, loading it on the calling
+	 * thread if it is missing or expired. Callers that arrive while another
+	 * thread is loading the same key wait for that load.
+	 */
+	public V get(K key, Loader<V> loader) throws Exception {
+		long now = System.nanoTime();
+		Cached<V> cached = values.get(key);
+		if (cached != null && now - cached.loadedAt < ttlNanos) {
+			hits.increment();
+			cached.lastRead = now;
+			if (now - cached.refreshedAt >= refreshAfterNanos && !loading.containsKey(key)) {
+				cached.refreshedAt = now;
+				try {
+					refreshExecutor.execute(() -> load(key, loader));
+				} catch (RejectedExecutionException e) {
+					// No more reloads; the value is still good until it expires.
+				}
+			}
+			return cached.value;
+		}
+		misses.increment();
+		try {
+			return load(key, loader).get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
+		}
+	}
+
+	public void invalidate(K key) {
+		values.remove(key);
+	}
+
+	public void invalidateAll() {
+		values.clear();
+	}
+
+	public Stats stats() {
+		return new Stats(hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(), loadNanos.sum(), evictions.sum(),
+				values.size());
+	}
+
+	/**
+	 * Runs the loader unless a load of the key is already in flight, in which
+	 * case that load's future is returned.
+	 */
+	private CompletableFuture<V> load(K key, Loader<V> loader) {
+		CompletableFuture<V> created = new CompletableFuture<>();
+		CompletableFuture<V> inFlight = loading.putIfAbsent(key, created);
+		if (inFlight != null) {
+			return inFlight;
+		}
+		long started = System.nanoTime();
+		try {
+			V value = loader.load();
+			long loadedAt = System.nanoTime();
+			values.put(key, new Cached<>(value, loadedAt));
+			evictIfFull();
+			created.complete(value);
+		} catch (Throwable t) {
+			// Errors too: callers already waiting on the future would hang.
+			loadFailures.increment();
+			created.completeExceptionally(t);
+		} finally {
+			loads.increment();
+			loadNanos.add(System.nanoTime() - started);
+			loading.remove(key, created);
+		}
+		return created;
+	}
+
+	private void evictIfFull() {
+		while (values.size() > maxEntries) {
+			K eldest = null;
+			long eldestRead = 0;
+			for (Map.Entry<K, Cached<V>> entry : values.entrySet()) {
+				if (eldest == null || entry.getValue().lastRead - eldestRead < 0) {
+					eldest = entry.getKey();
+					eldestRead = entry.getValue().lastRead;
+				}
+			}
+			if (eldest == null || values.remove(eldest) == null) {
+				return;
+			}
+			evictions.increment();
+		}
+	}
+
+	private static final class Cached<V> {
+		final V value;
+		final long loadedAt;
+		volatile long lastRead;
+		/** When a reload was last started, successful or not. */
+		volatile long refreshedAt;
+
+		Cached(V value, long loadedAt) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+			this.lastRead = loadedAt;
+			this.refreshedAt = loadedAt;
+		}
+	}
+
+	/** Counters since the cache was created. */
+	public static final class Stats {
+
+		private final long hits;
+		private final long misses;
+		private final long loads;
+		private final long loadFailures;
+		private final long loadNanos;
+		private final long evictions;
+		private final int size;
+
+		Stats(long hits, long misses, long loads, long loadFailures, long loadNanos, long evictions, int size) {
+			this.hits = hits;
+			this.misses = misses;
+			this.loads = loads;
+			this.loadFailures = loadFailures;
+			this.loadNanos = loadNanos;
+			this.evictions = evictions;
+			this.size = size;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		public long getLoads() {
+			return loads;
+		}
+
+		public long getLoadFailures() {
+			return loadFailures;
+		}
+
+		public long getTotalLoadMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(loadNanos);
+		}
+
+		public long getEvictions() {
+			return evictions;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public double getHitRate() {
+			long requests = hits + misses;
+			return requests == 0 ? 0 : (double) hits / requests;
+		}
+
+		@Override
+		public String toString() {
+			return "hits=" + hits + ", misses=" + misses + ", loads=" + loads + ", loadFailures=" + loadFailures
+					+ ", averageLoadMillis=" + (loads == 0 ? 0 : getTotalLoadMillis() / loads) + ", evictions="
+					+ evictions + ", size=" + size;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.protocol.BasicHttpContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.http.HttpMethodName;
+
+/**
+ * Signing throughput of the SDK's {@link AWS4Signer} against
+ * {@link ElasticSearchRequestInterceptor} for a search-sized and a
+ * bulk-sized body. Runs on several threads, as the client's I/O reactor does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RequestSigningBenchmark {
+
+	private static final String HOST = "search-jobtrees.us-east-1.es.amazonaws.com";
+
+	@Param({ "1024", "5242880" })
+	public int bodyBytes;
+
+	private byte[] body;
+	private BasicAWSCredentials credentials;
+	private ElasticSearchRequestInterceptor interceptor;
+
+	@Setup
+	public void setUp() {
+		body = new byte[bodyBytes];
+		Arrays.fill(body, (byte) 'x');
+		credentials = new BasicAWSCredentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY");
+		interceptor = new ElasticSearchRequestInterceptor("es", "us-east-1",
+				new AWSStaticCredentialsProvider(credentials));
+	}
+
+	@Benchmark
+	public Object sdkSigner() {
+		AWS4Signer signer = new AWS4Signer();
+		signer.setServiceName("es");
+		signer.setRegionName("us-east-1");
+		DefaultRequest<Void> request = new DefaultRequest<>("es");
+		request.setHttpMethod(HttpMethodName.POST);
+		request.setEndpoint(URI.create("https://" + HOST));
+		request.setResourcePath("/_bulk");
+		request.setContent(new ByteArrayInputStream(body));
+		signer.sign(request, credentials);
+		return request.getHeaders().get("Authorization");
+	}
+
+	@Benchmark
+	public Object cachedInterceptor() throws Exception {
+		BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("POST", "/_bulk");
+		request.setHeader("Host", HOST);
+		request.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+		interceptor.process(request, new BasicHttpContext());
+		return request.getFirstHeader("Authorization");
+	}
+}
@@ -0,0 +1,120 @@
+package com.jobtrees.jobpostings.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the role taxonomy in {@code roles_index_03_05_2023},
+ * built from a single scroll over the index. Titles, degrees and industries
+ * repeat heavily across roles, so each distinct string is stored once; pay is
+ * kept as a primitive {@code int} per role.
+ * <p>
+ * The accessors are read-only views in index order, matching what the
+ * separate per-field lookups used to return.
+ */
+public class RoleTaxonomy {
+
+	/** Marks a role without an {@code averagePay}. */
+	private static final int NO_PAY = Integer.MIN_VALUE;
+
+	private final String[] titles;
+	private final int[] averagePay;
+	private final String[] degrees;
+	private final String[] industries;
+
+	private RoleTaxonomy(String[] titles, int[] averagePay, String[] degrees, String[] industries) {
+		this.titles = titles;
+		this.averagePay = averagePay;
+		this.degrees = degrees;
+		this.industries = industries;
+	}
+
+	public int size() {
+		return titles.length;
+	}
+
+	/** Distinct role titles, lower-cased. */
+	public Set<String> lowerCaseTitles() {
+		Set<String> lowerCase = new LinkedHashSet<>(titles.length * 4 / 3 + 1);
+		for (String title : titles) {
+			if (title != null) {
+				lowerCase.add(title.toLowerCase());
+			}
+		}
+		return lowerCase;
+	}
+
+	/**
+	 * Average national pay per title; a role without pay maps to null. When a
+	 * title occurs more than once the last role wins.
+	 */
+	public Map<String, Integer> nationalPay() {
+		Map<String, Integer> pay = new HashMap<>(titles.length * 4 / 3 + 1);
+		for (int i = 0; i < titles.length; i++) {
+			pay.put(titles[i], averagePay[i] == NO_PAY ? null : averagePay[i]);
+		}
+		return pay;
+	}
+
+	/** Every role's common degree, duplicates included. */
+	public List<String> education() {
+		return Collections.unmodifiableList(Arrays.asList(degrees));
+	}
+
+	/** Every role's industries, flattened, duplicates included. */
+	public List<String> industries() {
+		return Collections.unmodifiableList(Arrays.asList(industries));
+	}
+
+	/** Collects roles in index order and shares repeated strings. */
+	public static class Builder {
+
+		private final Map<String, String> pool = new HashMap<>();
+		private final List<String> titles = new ArrayList<>();
+		private int[] averagePay = new int[1024];
+		private final List<String> degrees = new ArrayList<>();
+		private final List<String> industries = new ArrayList<>();
+
+		/**
+		 * Adds one role document. Any argument may be null; a null industry
+		 * list adds nothing.
+		 */
+		public Builder add(String title, Number pay, String degree, List<?> roleIndustries) {
+			if (titles.size() == averagePay.length) {
+				averagePay = Arrays.copyOf(averagePay, averagePay.length * 2);
+			}
+			averagePay[titles.size()] = pay == null ? NO_PAY : pay.intValue();
+			titles.add(share(title));
+			if (degree != null) {
+				degrees.add(share(degree));
+			}
+			if (roleIndustries != null) {
+				for (Object industry : roleIndustries) {
+					if (industry != null) {
+						industries.add(share(industry.toString()));
+					}
+				}
+			}
+			return this;
+		}
+
+		public RoleTaxonomy build() {
+			return new RoleTaxonomy(titles.toArray(new String[0]), Arrays.copyOf(averagePay, titles.size()),
+					degrees.toArray(new String[0]), industries.toArray(new String[0]));
+		}
+
+		private String share(String value) {
+			if (value == null) {
+				return null;
+			}
+			String shared = pool.putIfAbsent(value, value);
+			return shared != null ? shared : value;
+		}
+	}
+}
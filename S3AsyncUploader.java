@@ -0,0 +1,396 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Publishes files to a bucket over an {@link S3AsyncClient}, so hundreds of
+ * PUTs overlap instead of each waiting for the previous one. At most
+ * {@code maxConcurrentUploads} PUTs, whole objects or multipart parts, are
+ * in flight; starting another blocks while that many are outstanding, which
+ * holds back whoever produces the files.
+ * <p>
+ * Files can be written through {@link #openStream}, which buffers at most
+ * one part at a time, so memory stays bounded by the part size times the
+ * writers and PUTs in flight rather than by file size.
+ * <p>
+ * Throttling (429), 5xx responses, S3's {@code RequestTimeout} and
+ * transient client-side failures (I/O errors and timeouts) are retried with
+ * jittered exponential back-off before the upload fails. The client is
+ * expected to have its own retries turned off, so this policy is the only
+ * one applied.
+ */
+public class S3AsyncUploader {
+
+    /** S3's minimum size for every part but the last. */
+    static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+
+    private final S3AsyncClient s3Client;
+    private final String bucket;
+    private final String keyPrefix;
+    private final Semaphore permits;
+    private final AtomicInteger retries = new AtomicInteger();
+
+    public S3AsyncUploader(S3AsyncClient s3Client, String bucket, String keyPrefix, int maxConcurrentUploads) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix;
+        this.permits = new Semaphore(maxConcurrentUploads);
+    }
+
+    /**
+     * Starts a public-read PUT of {@code body} and returns a future of the
+     * object's ETag, without quotes. Blocks only while the concurrency limit
+     * is reached.
+     */
+    public CompletableFuture<String> upload(String fileName, String contentType, byte[] body)
+            throws InterruptedException {
+        return putObject(keyPrefix + fileName, contentType, body, body.length);
+    }
+
+    /**
+     * Opens a stream that uploads what is written to it as {@code fileName}.
+     * See {@link StreamingUpload}.
+     */
+    public StreamingUpload openStream(String fileName, String contentType) {
+        return new StreamingUpload(keyPrefix + fileName, contentType);
+    }
+
+    /**
+     * Starts deleting {@code fileName}, under the same limit and retries as
+     * a PUT. Deleting an object that does not exist succeeds.
+     */
+    public CompletableFuture<Void> delete(String fileName) throws InterruptedException {
+        DeleteObjectRequest request = DeleteObjectRequest.builder()
+                .bucket(bucket)
+                .key(keyPrefix + fileName)
+                .build();
+        return limited(() -> s3Client.deleteObject(request).thenApply(response -> null));
+    }
+
+    /**
+     * ETag of an object without its quotes, or null if the object does not
+     * exist.
+     */
+    public String eTagOf(String fileName) {
+        try {
+            String eTag = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(keyPrefix + fileName)
+                    .build()).join().eTag();
+            return unquote(eTag);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof S3Exception && ((S3Exception) e.getCause()).statusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /** Requests retried so far, across all uploads. */
+    public int getRetryCount() {
+        return retries.get();
+    }
+
+    private CompletableFuture<String> putObject(String key, String contentType, byte[] body, int length)
+            throws InterruptedException {
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .contentType(contentType)
+                .contentLength((long) length)
+                .acl("public-read")
+                .build();
+        return limited(() -> s3Client.putObject(request,
+                        AsyncRequestBody.fromByteBuffer(ByteBuffer.wrap(body, 0, length)))
+                .thenApply(response -> unquote(response.eTag())));
+    }
+
+    /** Sends a request, with retries, while holding one of the concurrency permits. */
+    private <T> CompletableFuture<T> limited(Supplier<CompletableFuture<T>> request) throws InterruptedException {
+        permits.acquire();
+        CompletableFuture<T> result;
+        try {
+            result = withRetries(request, 1, INITIAL_BACKOFF_MILLIS);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return result.whenComplete((value, error) -> permits.release());
+    }
+
+    private <T> CompletableFuture<T> withRetries(Supplier<CompletableFuture<T>> request, int attempt,
+            long backoffMillis) {
+        return request.get()
+                .handle((value, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(value);
+                    }
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (attempt >= MAX_ATTEMPTS || !isRetryable(cause)) {
+                        return CompletableFuture.<T>failedFuture(cause);
+                    }
+                    retries.incrementAndGet();
+                    // Uploads throttled together would otherwise all retry at the same moment.
+                    long delayMillis = ThreadLocalRandom.current().nextLong(backoffMillis / 2, backoffMillis + 1);
+                    return CompletableFuture.supplyAsync(() -> null,
+                                    CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> withRetries(request, attempt + 1, backoffMillis * 2));
+                })
+                .thenCompose(result -> result);
+    }
+
+    /**
+     * Whether another attempt may succeed. Client exceptions only qualify
+     * when caused by I/O or a timeout; the rest, such as missing credentials
+     * or an invalid request, fail the same way every time.
+     */
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof S3Exception) {
+            S3Exception s3Error = (S3Exception) error;
+            int status = s3Error.statusCode();
+            return status == 429 || status >= 500 || (s3Error.awsErrorDetails() != null
+                    && "RequestTimeout".equals(s3Error.awsErrorDetails().errorCode()));
+        }
+        if (error instanceof ApiCallAttemptTimeoutException || error instanceof ApiCallTimeoutException) {
+            return true;
+        }
+        if (!(error instanceof SdkClientException)) {
+            return false;
+        }
+        for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String unquote(String eTag) {
+        return eTag == null ? null : eTag.replace("\"", "");
+    }
+
+    /**
+     * Uploads whatever is written to it as one object without holding the
+     * whole object in memory. Bytes are buffered up to one part; when the
+     * buffer fills, a multipart upload is started and the part is sent in
+     * the background while writing continues into a new buffer. An object
+     * smaller than one part is sent with a single PUT.
+     * <p>
+     * {@link #close()} sends what is left and returns without waiting;
+     * {@link #getResult()} then completes with the ETag once the object is
+     * published. If writing fails, call {@link #abort()} instead so a
+     * partial object is never published.
+     */
+    public final class StreamingUpload extends OutputStream {
+
+        private final String key;
+        private final String contentType;
+        private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        private byte[] buffer = new byte[INITIAL_BUFFER];
+        private int count;
+        private String uploadId;
+        private boolean closed;
+        private CompletableFuture<String> result;
+
+        private StreamingUpload(String key, String contentType) {
+            this.key = key;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            if (count == PART_SIZE) {
+                sendPart();
+            }
+            ensureCapacity(count + 1);
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            while (len > 0) {
+                if (count == PART_SIZE) {
+                    sendPart();
+                }
+                int chunk = Math.min(len, PART_SIZE - count);
+                ensureCapacity(count + chunk);
+                System.arraycopy(b, off, buffer, count, chunk);
+                count += chunk;
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        /**
+         * Sends the remaining bytes and starts publishing the object. Blocks
+         * only while the concurrency limit is reached.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (uploadId == null) {
+                    result = putObject(key, contentType, buffer, count);
+                    return;
+                }
+                if (count > 0) {
+                    sendPart();
+                }
+                String id = uploadId;
+                result = CompletableFuture.allOf(parts.toArray(new CompletableFuture[0]))
+                        .thenCompose(ignored -> withRetries(() -> s3Client.completeMultipartUpload(
+                                CompleteMultipartUploadRequest.builder()
+                                        .bucket(bucket)
+                                        .key(key)
+                                        .uploadId(id)
+                                        .multipartUpload(CompletedMultipartUpload.builder()
+                                                .parts(completedParts())
+                                                .build())
+                                        .build()), 1, INITIAL_BACKOFF_MILLIS))
+                        .thenApply(response -> unquote(response.eTag()));
+                result.whenComplete((eTag, error) -> {
+                    if (error != null) {
+                        abortMultipartUpload(id);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort();
+                throw new InterruptedIOException("Interrupted while uploading " + key);
+            } finally {
+                buffer = null;
+            }
+        }
+
+        /** Completes with the object's ETag once published; null before {@link #close()}. */
+        public CompletableFuture<String> getResult() {
+            return result;
+        }
+
+        /**
+         * Discards everything written so far; nothing is published. Parts
+         * already sent are dropped once they finish.
+         */
+        public void abort() {
+            closed = true;
+            buffer = null;
+            if (uploadId != null) {
+                String id = uploadId;
+                uploadId = null;
+                CompletableFuture.allOf(parts.toArray(new CompletableFuture[0]))
+                        .whenComplete((ignored, error) -> abortMultipartUpload(id));
+            }
+        }
+
+        private void sendPart() throws IOException {
+            for (CompletableFuture<CompletedPart> part : parts) {
+                if (part.isCompletedExceptionally()) {
+                    throw new IOException("Could not upload " + key, part.handle((p, e) -> e).join());
+                }
+            }
+            try {
+                if (uploadId == null) {
+                    uploadId = withRetries(() -> s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .contentType(contentType)
+                            .acl("public-read")
+                            .build()), 1, INITIAL_BACKOFF_MILLIS).join().uploadId();
+                }
+                int partNumber = parts.size() + 1;
+                byte[] part = buffer;
+                int length = count;
+                UploadPartRequest request = UploadPartRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) length)
+                        .build();
+                parts.add(limited(() -> s3Client.uploadPart(request,
+                                AsyncRequestBody.fromByteBuffer(ByteBuffer.wrap(part, 0, length))))
+                        .thenApply(response -> CompletedPart.builder()
+                                .partNumber(partNumber)
+                                .eTag(response.eTag())
+                                .build()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while uploading " + key);
+            } catch (CompletionException e) {
+                throw new IOException("Could not start the upload of " + key, e.getCause());
+            }
+            // The part just sent still reads from the old buffer.
+            buffer = new byte[PART_SIZE];
+            count = 0;
+        }
+
+        private List<CompletedPart> completedParts() {
+            List<CompletedPart> completed = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completed.add(part.join());
+            }
+            return completed;
+        }
+
+        private void abortMultipartUpload(String id) {
+            // Best effort; if this fails too, the incomplete upload is only left unpublished.
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(id)
+                    .build());
+        }
+
+        private void ensureCapacity(int required) {
+            if (required > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(PART_SIZE, Math.max(required, buffer.length * 2)));
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Upload of " + key + " is already closed");
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.Scroll;
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Iterates a scroll one page at a time so only the current page is held in
+ * memory. The scroll context is cleared when the last page has been read or
+ * when the iterator is closed early.
+ * <p>
+ * Pacing is adaptive: {@code pauseMillis} is waited between pages (0 for none),
+ * and a 429 from the cluster is retried with a doubling back-off instead of
+ * failing the whole scroll.
+ */
+public class ScrollPageIterator implements Iterator<SearchHit[]>, Closeable {
+
+	private static final Scroll SCROLL = new Scroll(TimeValue.timeValueMinutes(10L));
+	private static final int MAX_REJECTED_RETRIES = 5;
+	private static final long INITIAL_BACKOFF_MILLIS = 200;
+
+	private final RestHighLevelClient client;
+	private final SearchRequest searchRequest;
+	private final long pauseMillis;
+
+	private String scrollId;
+	private SearchHit[] nextPage;
+	private boolean started;
+	private boolean finished;
+
+	public ScrollPageIterator(RestHighLevelClient client, SearchRequest searchRequest, long pauseMillis) {
+		this.client = client;
+		this.searchRequest = searchRequest;
+		this.pauseMillis = pauseMillis;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextPage != null) {
+			return true;
+		}
+		if (finished) {
+			return false;
+		}
+		try {
+			SearchResponse searchResponse = fetch();
+			scrollId = searchResponse.getScrollId();
+			SearchHit[] searchHits = searchResponse.getHits().getHits();
+			if (searchHits == null || searchHits.length == 0) {
+				close();
+				return false;
+			}
+			nextPage = searchHits;
+			return true;
+		} catch (IOException e) {
+			closeQuietly(e);
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			IOException failure = new IOException("Interrupted while scrolling", e);
+			closeQuietly(failure);
+			throw new UncheckedIOException(failure);
+		}
+	}
+
+	@Override
+	public SearchHit[] next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		SearchHit[] page = nextPage;
+		nextPage = null;
+		return page;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		nextPage = null;
+		if (scrollId != null) {
+			ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+			clearScrollRequest.addScrollId(scrollId);
+			client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+			scrollId = null;
+		}
+	}
+
+	private SearchResponse fetch() throws IOException, InterruptedException {
+		long backoff = INITIAL_BACKOFF_MILLIS;
+		for (int attempt = 0;; attempt++) {
+			try {
+				if (!started) {
+					searchRequest.scroll(SCROLL);
+					SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+					started = true;
+					return searchResponse;
+				}
+				if (pauseMillis > 0) {
+					Thread.sleep(pauseMillis);
+				}
+				SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
+				scrollRequest.scroll(SCROLL);
+				return client.searchScroll(scrollRequest, RequestOptions.DEFAULT);
+			} catch (ElasticsearchStatusException e) {
+				if (e.status() != RestStatus.TOO_MANY_REQUESTS || attempt >= MAX_REJECTED_RETRIES) {
+					throw e;
+				}
+				Thread.sleep(backoff);
+				backoff *= 2;
+			}
+		}
+	}
+
+	/**
+	 * Clears the scroll after {@code failure}; a failure to clear it is
+	 * added to {@code failure} as suppressed rather than replacing it, and
+	 * the scroll expires on its own.
+	 */
+	private void closeQuietly(IOException failure) {
+		try {
+			close();
+		} catch (IOException e) {
+			failure.addSuppressed(e);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+
+/**
+ * Walks a whole index page by page with {@code search_after} on a stable sort
+ * key, so every page costs the same and the walk is not capped by
+ * {@code index.max_result_window} the way {@code from}/{@code size} is.
+ * <p>
+ * With a point in time the walk sees one consistent snapshot of the index;
+ * without one, documents written during the walk may or may not show up.
+ * The sort key must be unique per document and have doc values, or be
+ * {@code _shard_doc}, which needs a point in time; see
+ * {@link PostingFieldTypes#uniqueSortField()}.
+ */
+public class SearchAfterCursor implements Closeable {
+
+    private static final TimeValue PIT_KEEP_ALIVE = TimeValue.timeValueMinutes(5);
+
+    private final RestHighLevelClient client;
+    private final String index;
+    private final SearchSourceBuilder source;
+    private String pointInTimeId;
+    private Object[] searchAfter;
+    private boolean exhausted;
+
+    /**
+     * @param source query, size and source filtering for each page; the
+     *               cursor adds the sort and {@code search_after} to it
+     */
+    public SearchAfterCursor(RestHighLevelClient client, String index, SearchSourceBuilder source, String sortField,
+            boolean usePointInTime) throws IOException {
+        if (PostingFieldTypes.SHARD_DOC.equals(sortField) && !usePointInTime) {
+            throw new IllegalArgumentException("Sorting on " + sortField + " needs a point in time");
+        }
+        this.client = client;
+        this.index = index;
+        this.source = source;
+        source.sort(SortBuilders.fieldSort(sortField).order(SortOrder.ASC));
+        if (usePointInTime) {
+            OpenPointInTimeRequest request = new OpenPointInTimeRequest(index).keepAlive(PIT_KEEP_ALIVE);
+            pointInTimeId = client.openPointInTime(request, RequestOptions.DEFAULT).getPointInTimeId();
+        }
+    }
+
+    /**
+     * Starts the walk after the document with these sort values instead of
+     * at the beginning, e.g. to resume from a {@link SitemapCheckpoint}.
+     * Must be called before the first {@link #nextPage()}.
+     */
+    public void startAfter(Object... sortValues) {
+        searchAfter = sortValues;
+    }
+
+    /**
+     * Fetches the next page, or an empty list once the index is exhausted.
+     */
+    public List<SearchHit> nextPage() throws IOException {
+        if (exhausted) {
+            return Collections.emptyList();
+        }
+
+        SearchRequest request;
+        if (pointInTimeId != null) {
+            source.pointInTimeBuilder(new PointInTimeBuilder(pointInTimeId).setKeepAlive(PIT_KEEP_ALIVE));
+            request = new SearchRequest();
+        } else {
+            request = new SearchRequest(index);
+        }
+        if (searchAfter != null) {
+            source.searchAfter(searchAfter);
+        }
+        request.source(source);
+
+        SearchResponse response = client.search(request, RequestOptions.DEFAULT);
+        if (response.pointInTimeId() != null) {
+            pointInTimeId = response.pointInTimeId();
+        }
+
+        SearchHit[] hits = response.getHits().getHits();
+        if (hits.length == 0) {
+            exhausted = true;
+            return Collections.emptyList();
+        }
+        searchAfter = hits[hits.length - 1].getSortValues();
+        return Arrays.asList(hits);
+    }
+
+    @Override
+    public void close() throws IOException {
+        exhausted = true;
+        if (pointInTimeId != null) {
+            client.closePointInTime(new ClosePointInTimeRequest(pointInTimeId), RequestOptions.DEFAULT);
+            pointInTimeId = null;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Progress of a full sitemap run for one index, kept on disk so a run that
+ * times out or fails part-way can be resumed instead of starting over.
+ * <p>
+ * The checkpoint is a journal in the manifest's format: a header line, then
+ * for every file that is done (uploaded, or unchanged and skipped) its
+ * {@code file} and {@code entry} lines followed by a {@code commit} line
+ * naming the last posting id in it and that posting's sort value. Files are
+ * committed strictly in order, so the last commit line says where the walk
+ * can pick up: after that sort value, with the next file number. Each commit
+ * is flushed to disk before the next one is written, and a record without
+ * its commit line, torn by a crash, is ignored on load.
+ * <p>
+ * Once the index is done, {@link #complete} appends the postings to submit
+ * to IndexNow and a {@code complete} line. The checkpoint stays until the
+ * index file covering every index has been written, so a run stopped in a
+ * later index does not walk this one again. A checkpoint that cannot be
+ * parsed is discarded, as if there were none.
+ */
+public class SitemapCheckpoint implements Closeable {
+
+    private final String indexName;
+    private final String extension;
+    private final long runStarted;
+    private final FileChannel channel;
+    private final Writer writer;
+    private final Map<Integer, PendingFile> pending = new TreeMap<>();
+    private int committedFiles;
+    private Object resumeAfter;
+    private boolean complete;
+    private List<String> changedIds = Collections.emptyList();
+
+    private SitemapCheckpoint(Path path, String indexName, String extension, long runStarted, boolean append)
+            throws IOException {
+        this.indexName = indexName;
+        this.extension = extension;
+        this.runStarted = runStarted;
+        Files.createDirectories(path.getParent());
+        this.channel = append
+                ? FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+        this.writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                StandardCharsets.UTF_8));
+    }
+
+    /** Starts a new checkpoint, replacing any left at {@code path}. */
+    public static SitemapCheckpoint start(Path path, String indexName, String extension, long runStarted)
+            throws IOException {
+        SitemapCheckpoint checkpoint = new SitemapCheckpoint(path, indexName, extension, runStarted, false);
+        checkpoint.writeHeader();
+        checkpoint.sync();
+        return checkpoint;
+    }
+
+    /**
+     * Reopens the checkpoint at {@code path} and loads its committed files
+     * into {@code manifest}, a fresh manifest the resumed run continues to
+     * fill. Returns null, leaving the manifest empty, if there is no
+     * checkpoint, it cannot be parsed, or it was written for a different
+     * extension or before {@code notBefore}.
+     * <p>
+     * The journal is first rewritten with the committed records only, so a
+     * torn tail never ends up in the middle of the file.
+     */
+    public static SitemapCheckpoint resume(Path path, String indexName, String extension, long notBefore,
+            SitemapManifest manifest) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        List<String[]> committed = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        boolean complete = false;
+        String[] header;
+        long runStarted;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            header = line == null ? null : line.split("\t", -1);
+            if (header == null || header.length != 4 || !"checkpoint".equals(header[0])
+                    || !indexName.equals(header[1]) || !extension.equals(header[2])) {
+                return null;
+            }
+            runStarted = Long.parseLong(header[3]);
+            if (runStarted < notBefore) {
+                return null;
+            }
+            List<String[]> record = new ArrayList<>();
+            while (!complete && (line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if ("file".equals(fields[0]) && fields.length == 3 && changed.isEmpty()) {
+                    record.clear();
+                    record.add(fields);
+                } else if ("entry".equals(fields[0]) && fields.length == 3 && !record.isEmpty()) {
+                    record.add(fields);
+                } else if ("commit".equals(fields[0]) && fields.length == 4 && !record.isEmpty()
+                        && record.get(0)[1].equals(fields[1])) {
+                    decodeSortValue(fields[3]);
+                    record.add(fields);
+                    committed.addAll(record);
+                    record.clear();
+                } else if ("changed".equals(fields[0]) && fields.length == 2) {
+                    record.clear();
+                    changed.add(fields[1]);
+                } else if ("complete".equals(fields[0]) && fields.length == 1) {
+                    complete = true;
+                } else {
+                    record.clear();
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // A damaged header or commit line; start over rather than guess.
+            return null;
+        }
+        if (!complete) {
+            changed.clear();
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        int committedFiles = 0;
+        Object resumeAfter = null;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                        StandardCharsets.UTF_8))) {
+            writer.write(String.join("\t", header) + "\n");
+            SitemapChunk chunk = null;
+            String sha256 = null;
+            for (String[] fields : committed) {
+                writer.write(String.join("\t", fields) + "\n");
+                if ("file".equals(fields[0])) {
+                    chunk = new SitemapChunk(fields[1]);
+                    sha256 = fields[2].isEmpty() ? null : fields[2];
+                } else if ("entry".equals(fields[0])) {
+                    String lastmod = fields[2].isEmpty() ? null : fields[2];
+                    chunk.add(fields[1], lastmod, SitemapChunk.entryBytes(fields[1], lastmod));
+                } else {
+                    manifest.putFile(chunk, sha256);
+                    committedFiles++;
+                    resumeAfter = fields[3].isEmpty() ? resumeAfter : decodeSortValue(fields[3]);
+                }
+            }
+            for (String id : changed) {
+                writer.write("changed\t" + id + "\n");
+            }
+            if (complete) {
+                writer.write("complete\n");
+            }
+            writer.flush();
+            channel.force(false);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        SitemapCheckpoint checkpoint = new SitemapCheckpoint(path, indexName, extension, runStarted, true);
+        checkpoint.committedFiles = committedFiles;
+        checkpoint.resumeAfter = resumeAfter;
+        checkpoint.complete = complete;
+        checkpoint.changedIds = Collections.unmodifiableList(changed);
+        return checkpoint;
+    }
+
+    /** When the checkpointed run started; the resumed run's watermark. */
+    public long getRunStarted() {
+        return runStarted;
+    }
+
+    /** Files committed so far; the next file is number {@code committedFiles + 1}. */
+    public synchronized int getCommittedFiles() {
+        return committedFiles;
+    }
+
+    /**
+     * Sort value of the last posting in the last committed file, to continue
+     * the walk after; null if none is committed.
+     */
+    public synchronized Object getResumeAfter() {
+        return resumeAfter;
+    }
+
+    /** Whether every file of the index was committed and {@link #complete} was called. */
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /** Postings the completed run queued for IndexNow. */
+    public synchronized List<String> getChangedIds() {
+        return changedIds;
+    }
+
+    /**
+     * Marks a file as done. Files may be reported in any order; each is
+     * written once every file before it has been, and flushed to disk.
+     */
+    public synchronized void commit(SitemapChunk chunk, String sha256) throws IOException {
+        pending.put(fileNumber(chunk.getFileName()), new PendingFile(chunk, sha256));
+        PendingFile next;
+        boolean wrote = false;
+        while ((next = pending.remove(committedFiles + 1)) != null) {
+            write(next);
+            wrote = true;
+        }
+        if (wrote) {
+            sync();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Marks the index as done, with the postings its run queued for IndexNow
+     * so they are still submitted if a later index stops the run.
+     */
+    public synchronized void complete(Collection<String> changedIds) throws IOException {
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException("Files after " + committedFiles + " are not committed yet");
+        }
+        for (String id : changedIds) {
+            writer.write("changed\t" + id + "\n");
+        }
+        writer.write("complete\n");
+        sync();
+        this.complete = true;
+        this.changedIds = Collections.unmodifiableList(new ArrayList<>(changedIds));
+    }
+
+    private void writeHeader() throws IOException {
+        writer.write("checkpoint\t" + indexName + "\t" + extension + "\t" + runStarted + "\n");
+    }
+
+    private void write(PendingFile file) throws IOException {
+        List<String> ids = file.chunk.getIds();
+        List<String> lastmods = file.chunk.getLastmods();
+        writer.write("file\t" + file.chunk.getFileName() + "\t" + (file.sha256 == null ? "" : file.sha256) + "\n");
+        for (int i = 0; i < ids.size(); i++) {
+            writer.write("entry\t" + ids.get(i) + "\t" + (lastmods.get(i) == null ? "" : lastmods.get(i)) + "\n");
+        }
+        String lastId = ids.isEmpty() ? "" : ids.get(ids.size() - 1);
+        Object sortValue = file.chunk.getLastSortValue();
+        writer.write("commit\t" + file.chunk.getFileName() + "\t" + lastId + "\t" + encodeSortValue(sortValue)
+                + "\n");
+        resumeAfter = sortValue == null ? resumeAfter : sortValue;
+        committedFiles++;
+    }
+
+    /** Keeps a sort value's type: keyword values come back as strings, numeric ones as longs. */
+    private static String encodeSortValue(Object value) {
+        if (value == null) {
+            return "";
+        }
+        return (value instanceof Number ? "n" : "s") + value;
+    }
+
+    private static Object decodeSortValue(String encoded) {
+        if (encoded.isEmpty()) {
+            return null;
+        }
+        if (encoded.charAt(0) == 'n') {
+            return Long.parseLong(encoded.substring(1));
+        }
+        if (encoded.charAt(0) == 's') {
+            return encoded.substring(1);
+        }
+        throw new IllegalArgumentException("Unknown sort value " + encoded);
+    }
+
+    private void sync() throws IOException {
+        writer.flush();
+        channel.force(false);
+    }
+
+    private int fileNumber(String fileName) {
+        return Integer.parseInt(fileName.substring(indexName.length() + 1, fileName.length() - extension.length()));
+    }
+
+    private static final class PendingFile {
+        final SitemapChunk chunk;
+        final String sha256;
+
+        PendingFile(SitemapChunk chunk, String sha256) {
+            this.chunk = chunk;
+            this.sha256 = sha256;
+        }
+    }
+}
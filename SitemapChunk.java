@@ -0,0 +1,88 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The job postings that go into one sitemap file. Only ids and
+ * {@code lastmod} values are kept; the {@code <url>} entries are rendered
+ * when the chunk is written.
+ */
+public class SitemapChunk {
+
+    static final String JOB_URL_PREFIX = "https://www.jobtrees.com/postid/";
+    static final String CHANGEFREQ = "daily";
+    static final String PRIORITY = "1.0";
+
+    private final String fileName;
+    private final List<String> ids = new ArrayList<>();
+    private final List<String> lastmods = new ArrayList<>();
+    private String newestLastmod;
+    private Object lastSortValue;
+    private long bytes = SitemapStreamWriter.DOCUMENT_OVERHEAD_BYTES;
+
+    public SitemapChunk(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /** Upper bound of the uncompressed file size once written. */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public List<String> getIds() {
+        return Collections.unmodifiableList(ids);
+    }
+
+    public List<String> getLastmods() {
+        return Collections.unmodifiableList(lastmods);
+    }
+
+    public String getNewestLastmod() {
+        return newestLastmod;
+    }
+
+    /**
+     * Sort value of the last entry in the walk that produced this chunk, or
+     * null when the chunk was not built from a walk.
+     */
+    public Object getLastSortValue() {
+        return lastSortValue;
+    }
+
+    void setLastSortValue(Object lastSortValue) {
+        this.lastSortValue = lastSortValue;
+    }
+
+    void add(String id, String lastmod, long entryBytes) {
+        ids.add(id);
+        lastmods.add(lastmod);
+        bytes += entryBytes;
+        if (lastmod != null) {
+            newestLastmod = LastmodFormatter.newer(newestLastmod, lastmod);
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        try (SitemapStreamWriter writer = new SitemapStreamWriter(out)) {
+            for (int i = 0; i < ids.size(); i++) {
+                writer.writeUrl(JOB_URL_PREFIX, ids.get(i), lastmods.get(i), CHANGEFREQ, PRIORITY);
+            }
+        }
+    }
+
+    static long entryBytes(String id, String lastmod) {
+        return SitemapStreamWriter.entryBytes(JOB_URL_PREFIX, id, lastmod, CHANGEFREQ, PRIORITY);
+    }
+}
@@ -0,0 +1,80 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-entry cost of the sitemap hot path: {@code lastmod} normalization and
+ * writing one {@code <url>}. Run with {@code -prof gc}; {@code writeUrl} and
+ * {@code normalizeCanonical} should show {@code gc.alloc.rate.norm} close to
+ * zero, the other normalizations only the result string.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SitemapEntryBenchmark {
+
+    private static final String CANONICAL = "2025-08-25T10:15:30Z";
+    private static final String OFFSET = "2025-08-25T12:15:30.123+02:00";
+    private static final long EPOCH_MILLIS = 1756116930123L;
+
+    private final String id = "a1b2c3d4-5678";
+    private SitemapStreamWriter writer;
+
+    @Setup
+    public void setUp() throws IOException {
+        writer = new SitemapStreamWriter(new NullSink());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        writer.close();
+    }
+
+    @Benchmark
+    public String normalizeCanonical() {
+        return LastmodFormatter.normalize(CANONICAL);
+    }
+
+    @Benchmark
+    public String normalizeOffset() {
+        return LastmodFormatter.normalize(OFFSET);
+    }
+
+    @Benchmark
+    public String normalizeEpochMillis() {
+        return LastmodFormatter.fromEpochMillis(EPOCH_MILLIS);
+    }
+
+    @Benchmark
+    public int writeUrl() throws IOException {
+        writer.writeUrl(SitemapChunk.JOB_URL_PREFIX, id, CANONICAL, SitemapChunk.CHANGEFREQ, SitemapChunk.PRIORITY);
+        return writer.getUrlCount();
+    }
+
+    /** Discards output so only formatting and escaping are measured. */
+    private static final class NullSink extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
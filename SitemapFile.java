@@ -0,0 +1,30 @@
+package com.jobtrees.jobpostings.service;
+
+/**
+ * A sitemap file that has been written to S3, as listed in the sitemap index.
+ */
+public class SitemapFile {
+
+    private final String fileName;
+    private final String lastmod;
+    private final int urlCount;
+
+    public SitemapFile(String fileName, String lastmod, int urlCount) {
+        this.fileName = fileName;
+        this.lastmod = lastmod;
+        this.urlCount = urlCount;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /** Newest {@code lastmod} of the entries in the file, or null if none had one. */
+    public String getLastmod() {
+        return lastmod;
+    }
+
+    public int getUrlCount() {
+        return urlCount;
+    }
+}
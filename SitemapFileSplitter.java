@@ -0,0 +1,66 @@
+package com.jobtrees.jobpostings.service;
+
+/**
+ * Groups a stream of job postings into sitemap files named
+ * {@code <index>_<n><extension>}, starting a new file whenever the next
+ * entry would push the current one past 50,000 URLs or 50 MB uncompressed.
+ * Fetch pages can therefore be any size without producing invalid sitemaps.
+ */
+public class SitemapFileSplitter {
+
+    private final String indexName;
+    private final String extension;
+    private int fileNumber;
+    private SitemapChunk current;
+
+    public SitemapFileSplitter(String indexName, String extension) {
+        this(indexName, extension, 0);
+    }
+
+    /**
+     * Continues the numbering after {@code filesWritten} files, for a run
+     * resumed from a {@link SitemapCheckpoint}.
+     */
+    public SitemapFileSplitter(String indexName, String extension, int filesWritten) {
+        this.indexName = indexName;
+        this.extension = extension;
+        this.fileNumber = filesWritten;
+    }
+
+    /**
+     * Adds an entry and returns the file it closed off, if adding it meant
+     * starting a new one; otherwise null.
+     */
+    public SitemapChunk add(String id, String lastmod) {
+        return add(id, lastmod, null);
+    }
+
+    /**
+     * Adds an entry fetched with {@code sortValue} as its sort key, which the
+     * file keeps as the point a resumed walk continues after.
+     */
+    public SitemapChunk add(String id, String lastmod, Object sortValue) {
+        long entryBytes = SitemapChunk.entryBytes(id, lastmod);
+        SitemapChunk full = null;
+        if (current != null && (current.size() >= SitemapStreamWriter.MAX_URLS
+                || current.getBytes() + entryBytes > SitemapStreamWriter.MAX_BYTES)) {
+            full = current;
+            current = null;
+        }
+        if (current == null) {
+            current = new SitemapChunk(indexName + "_" + (++fileNumber) + extension);
+        }
+        current.add(id, lastmod, entryBytes);
+        current.setLastSortValue(sortValue);
+        return full;
+    }
+
+    /**
+     * Returns the last, partly filled file, or null if nothing was added.
+     */
+    public SitemapChunk finish() {
+        SitemapChunk last = current;
+        current = null;
+        return last;
+    }
+}
@@ -0,0 +1,68 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes a {@code <sitemapindex>} listing sitemap files, streamed to an
+ * {@link OutputStream} the same way {@link SitemapStreamWriter} writes a
+ * {@code <urlset>}.
+ */
+public class SitemapIndexWriter implements Closeable {
+
+    /** Protocol limit for the number of sitemaps in one index file. */
+    public static final int MAX_SITEMAPS = 50000;
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private final XMLStreamWriter xml;
+    private int sitemapCount;
+
+    public SitemapIndexWriter(OutputStream out) throws IOException {
+        try {
+            xml = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeStartElement("sitemapindex");
+            xml.writeDefaultNamespace(SitemapStreamWriter.SITEMAP_NS);
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not start sitemap index", e);
+        }
+    }
+
+    public void writeSitemap(String loc, String lastmod) throws IOException {
+        if (sitemapCount == MAX_SITEMAPS) {
+            throw new IOException("A sitemap index cannot list more than " + MAX_SITEMAPS + " sitemaps");
+        }
+        try {
+            xml.writeStartElement("sitemap");
+            xml.writeStartElement("loc");
+            xml.writeCharacters(loc);
+            xml.writeEndElement();
+            if (lastmod != null) {
+                xml.writeStartElement("lastmod");
+                xml.writeCharacters(lastmod);
+                xml.writeEndElement();
+            }
+            xml.writeEndElement();
+            sitemapCount++;
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write sitemap index entry for " + loc, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.flush();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not finish sitemap index", e);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records, for one index, which job ids live in which sitemap file along with
+ * each entry's {@code lastmod}, each file's content hash, and the time the
+ * last run started (the watermark). An incremental run only has to fetch the
+ * postings changed since the watermark and rewrite the files they land in.
+ * <p>
+ * Stored as a tab-separated text file: a header line, then one {@code file}
+ * line per sitemap followed by its {@code entry} lines, and an {@code end}
+ * line. A manifest that cannot be parsed or lacks its end line is treated as
+ * missing, so the index gets a full run.
+ */
+public class SitemapManifest {
+
+    private final String indexName;
+    private final String extension;
+    private long watermark;
+    private final Map<String, ManifestFile> files = new LinkedHashMap<>();
+    private final Map<String, ManifestFile> fileById = new HashMap<>();
+    private int lastFileNumber;
+
+    public SitemapManifest(String indexName, String extension, long watermark) {
+        this.indexName = indexName;
+        this.extension = extension;
+        this.watermark = watermark;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /** Start time of the run this manifest describes, in epoch millis. */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public void setWatermark(long watermark) {
+        this.watermark = watermark;
+    }
+
+    /**
+     * Records a file exactly as it was written by a full run.
+     */
+    public synchronized void putFile(SitemapChunk chunk, String sha256) {
+        ManifestFile file = file(chunk.getFileName());
+        file.sha256 = sha256;
+        List<String> ids = chunk.getIds();
+        List<String> lastmods = chunk.getLastmods();
+        for (int i = 0; i < ids.size(); i++) {
+            file.put(ids.get(i), lastmods.get(i));
+            fileById.put(ids.get(i), file);
+        }
+    }
+
+    public synchronized void setHash(String fileName, String sha256) {
+        files.get(fileName).sha256 = sha256;
+    }
+
+    /** SHA-256 of the file as last uploaded, or null if unknown. */
+    public synchronized String hashOf(String fileName) {
+        ManifestFile file = files.get(fileName);
+        return file == null ? null : file.sha256;
+    }
+
+    public synchronized boolean contains(String id) {
+        return fileById.containsKey(id);
+    }
+
+    public synchronized String lastmodOf(String id) {
+        ManifestFile file = fileById.get(id);
+        return file == null ? null : file.entries.get(id);
+    }
+
+    /** Ids of every posting currently in a sitemap. */
+    public synchronized Set<String> ids() {
+        return new HashSet<>(fileById.keySet());
+    }
+
+    /**
+     * Adds or updates a posting and returns the name of the file that now
+     * needs rewriting. New postings go into the last file while it has room,
+     * otherwise into a new file.
+     */
+    public synchronized String upsert(String id, String lastmod) {
+        ManifestFile file = fileById.get(id);
+        if (file == null) {
+            file = tailWithRoomFor(id, lastmod);
+            fileById.put(id, file);
+        }
+        file.put(id, lastmod);
+        return file.fileName;
+    }
+
+    /**
+     * Drops a posting and returns the file it was in, or null if it was not
+     * in any sitemap.
+     */
+    public synchronized String remove(String id) {
+        ManifestFile file = fileById.remove(id);
+        if (file == null) {
+            return null;
+        }
+        file.remove(id);
+        return file.fileName;
+    }
+
+    /** Forgets a file, e.g. once removals emptied it and it was deleted. */
+    public synchronized void removeFile(String fileName) {
+        ManifestFile file = files.remove(fileName);
+        if (file != null) {
+            file.entries.keySet().forEach(fileById::remove);
+        }
+    }
+
+    public synchronized SitemapChunk chunk(String fileName) {
+        ManifestFile file = files.get(fileName);
+        SitemapChunk chunk = new SitemapChunk(fileName);
+        file.entries.forEach((id, lastmod) -> chunk.add(id, lastmod, SitemapChunk.entryBytes(id, lastmod)));
+        return chunk;
+    }
+
+    /** Files in numeric order, as they should appear in the sitemap index. */
+    public synchronized List<SitemapFile> files() {
+        List<ManifestFile> ordered = new ArrayList<>(files.values());
+        ordered.sort((a, b) -> Integer.compare(a.number, b.number));
+        List<SitemapFile> result = new ArrayList<>();
+        for (ManifestFile file : ordered) {
+            if (!file.entries.isEmpty()) {
+                result.add(new SitemapFile(file.fileName, file.newestLastmod(), file.entries.size()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the manifest at {@code path}; null if there is none or it is
+     * damaged, e.g. truncated or with a malformed line.
+     */
+    public static SitemapManifest load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            String[] header = line == null ? null : line.split("\t", -1);
+            if (header == null || header.length != 4 || !"manifest".equals(header[0])) {
+                throw new IllegalArgumentException("bad header");
+            }
+            SitemapManifest manifest = new SitemapManifest(header[1], header[2], Long.parseLong(header[3]));
+            ManifestFile file = null;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if ("file".equals(fields[0]) && fields.length == 3) {
+                    file = manifest.file(fields[1]);
+                    file.sha256 = fields[2].isEmpty() ? null : fields[2];
+                } else if ("entry".equals(fields[0]) && fields.length == 3 && file != null) {
+                    file.put(fields[1], fields[2].isEmpty() ? null : fields[2]);
+                    manifest.fileById.put(fields[1], file);
+                } else if ("end".equals(fields[0]) && fields.length == 1) {
+                    return manifest;
+                } else {
+                    throw new IllegalArgumentException("bad line: " + line);
+                }
+            }
+            throw new IllegalArgumentException("no end line");
+        } catch (IllegalArgumentException e) {
+            // Damaged; a full run writes a new one.
+            System.out.println("Ignoring manifest " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the manifest to a temporary file first and then moves it into
+     * place, so a crash never leaves a half-written manifest behind.
+     */
+    public synchronized void save(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write("manifest\t" + indexName + "\t" + extension + "\t" + watermark);
+            writer.newLine();
+            for (ManifestFile file : files.values()) {
+                writer.write("file\t" + file.fileName + "\t" + (file.sha256 == null ? "" : file.sha256));
+                writer.newLine();
+                for (Map.Entry<String, String> entry : file.entries.entrySet()) {
+                    writer.write("entry\t" + entry.getKey() + "\t" + (entry.getValue() == null ? "" : entry.getValue()));
+                    writer.newLine();
+                }
+            }
+            writer.write("end");
+            writer.newLine();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ManifestFile file(String fileName) {
+        return files.computeIfAbsent(fileName, name -> {
+            ManifestFile file = new ManifestFile(name, fileNumber(name));
+            lastFileNumber = Math.max(lastFileNumber, file.number);
+            return file;
+        });
+    }
+
+    private ManifestFile tailWithRoomFor(String id, String lastmod) {
+        ManifestFile tail = files.get(indexName + "_" + lastFileNumber + extension);
+        long entryBytes = SitemapChunk.entryBytes(id, lastmod);
+        if (tail == null || tail.entries.size() >= SitemapStreamWriter.MAX_URLS
+                || tail.bytes + entryBytes > SitemapStreamWriter.MAX_BYTES) {
+            tail = file(indexName + "_" + (lastFileNumber + 1) + extension);
+        }
+        return tail;
+    }
+
+    private int fileNumber(String fileName) {
+        if (!fileName.startsWith(indexName + "_") || !fileName.endsWith(extension)
+                || fileName.length() <= indexName.length() + 1 + extension.length()) {
+            throw new IllegalArgumentException("not a file of " + indexName + ": " + fileName);
+        }
+        String number = fileName.substring(indexName.length() + 1, fileName.length() - extension.length());
+        return Integer.parseInt(number);
+    }
+
+    private static final class ManifestFile {
+        final String fileName;
+        final int number;
+        final LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+        String sha256;
+        long bytes = SitemapStreamWriter.DOCUMENT_OVERHEAD_BYTES;
+
+        ManifestFile(String fileName, int number) {
+            this.fileName = fileName;
+            this.number = number;
+        }
+
+        void put(String id, String lastmod) {
+            if (entries.containsKey(id)) {
+                bytes -= SitemapChunk.entryBytes(id, entries.get(id));
+            }
+            entries.put(id, lastmod);
+            bytes += SitemapChunk.entryBytes(id, lastmod);
+        }
+
+        void remove(String id) {
+            String previous = entries.remove(id);
+            bytes -= SitemapChunk.entryBytes(id, previous);
+        }
+
+        String newestLastmod() {
+            String newest = null;
+            for (String lastmod : entries.values()) {
+                if (lastmod != null) {
+                    newest = LastmodFormatter.newer(newest, lastmod);
+                }
+            }
+            return newest;
+        }
+    }
+}
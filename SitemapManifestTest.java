@@ -0,0 +1,69 @@
+package com.jobtrees.jobpostings.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SitemapManifestTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTrips() throws IOException {
+        Path path = dir.resolve("jobs.manifest");
+        saved().save(path);
+
+        SitemapManifest loaded = SitemapManifest.load(path);
+        assertNotNull(loaded);
+        assertEquals(1234L, loaded.getWatermark());
+        assertEquals("2024-05-01", loaded.lastmodOf("2"));
+        assertEquals(1, loaded.files().size());
+    }
+
+    @Test
+    void truncatedManifestIsIgnored() throws IOException {
+        Path path = dir.resolve("jobs.manifest");
+        saved().save(path);
+        String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+
+        // Cut anywhere before the end line is complete; only its newline may go.
+        for (int length = 0; length < content.length() - 1; length++) {
+            Files.write(path, content.substring(0, length).getBytes(StandardCharsets.UTF_8));
+            assertNull(SitemapManifest.load(path), "truncated to " + length + " chars");
+        }
+    }
+
+    @Test
+    void damagedHeaderIsIgnored() throws IOException {
+        Path path = dir.resolve("jobs.manifest");
+        Files.write(path, "manifest\tjobs\t.xml\tnot-a-number\nend\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(SitemapManifest.load(path));
+
+        Files.write(path, "manifest\tjobs\nend\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(SitemapManifest.load(path));
+    }
+
+    @Test
+    void foreignFileNameIsIgnored() throws IOException {
+        Path path = dir.resolve("jobs.manifest");
+        Files.write(path, "manifest\tjobs\t.xml\t1234\nfile\tother_1.xml\t\nend\n"
+                .getBytes(StandardCharsets.UTF_8));
+        assertNull(SitemapManifest.load(path));
+    }
+
+    private static SitemapManifest saved() {
+        SitemapManifest manifest = new SitemapManifest("jobs", ".xml", 1234L);
+        manifest.upsert("1", "2024-04-30T10:00:00Z");
+        manifest.upsert("2", "2024-05-01");
+        return manifest;
+    }
+}
@@ -0,0 +1,217 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a sitemap {@code <urlset>} straight to an {@link OutputStream}, one
+ * {@code <url>} entry at a time, so a page never has to exist as a DOM tree or
+ * a String. The caller owns the stream; {@link #close()} only finishes the
+ * document and flushes it.
+ * <p>
+ * Markup and values are escaped and UTF-8 encoded by hand into one reusable
+ * buffer, so writing an entry allocates nothing.
+ */
+public class SitemapStreamWriter implements Closeable {
+
+    static final String SITEMAP_NS = "http://www.sitemaps.org/schemas/sitemap/0.9";
+
+    /** Protocol limits for a single sitemap file (the byte limit is uncompressed). */
+    public static final int MAX_URLS = 50000;
+    public static final long MAX_BYTES = 50L * 1024 * 1024;
+
+    /** Upper bound for the XML declaration plus the {@code <urlset>} open and close tags. */
+    static final int DOCUMENT_OVERHEAD_BYTES = 128;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** Longest UTF-8 output of one escaped char: a surrogate pair's 4 bytes or {@code &quot;}. */
+    private static final int MAX_CHAR_BYTES = 6;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+    private int urlCount;
+
+    public SitemapStreamWriter(OutputStream out) throws IOException {
+        this.out = out;
+        writeMarkup("<?xml version=\"1.0\" encoding=\"UTF-8\"?><urlset xmlns=\"");
+        writeMarkup(SITEMAP_NS);
+        writeMarkup("\">");
+    }
+
+    /**
+     * Appends one {@code <url>} entry. A null {@code lastmod} is left out
+     * rather than written as an empty element, which crawlers reject.
+     */
+    public void writeUrl(String loc, String lastmod, String changefreq, String priority) throws IOException {
+        writeUrl(loc, null, lastmod, changefreq, priority);
+    }
+
+    /**
+     * Same as {@link #writeUrl(String, String, String, String)} with the
+     * location given as a prefix and a suffix, so callers need not
+     * concatenate them.
+     */
+    public void writeUrl(String locPrefix, String locSuffix, String lastmod, String changefreq, String priority)
+            throws IOException {
+        writeMarkup("<url><loc>");
+        writeEscaped(locPrefix);
+        if (locSuffix != null) {
+            writeEscaped(locSuffix);
+        }
+        writeMarkup("</loc>");
+        writeElement("<lastmod>", lastmod, "</lastmod>");
+        writeElement("<changefreq>", changefreq, "</changefreq>");
+        writeElement("<priority>", priority, "</priority>");
+        writeMarkup("</url>");
+        urlCount++;
+    }
+
+    public int getUrlCount() {
+        return urlCount;
+    }
+
+    /**
+     * Upper bound of the UTF-8 bytes {@link #writeUrl} produces for this
+     * entry, assuming every markup character in the values gets escaped.
+     */
+    public static long entryBytes(String loc, String lastmod, String changefreq, String priority) {
+        return entryBytes(loc, null, lastmod, changefreq, priority);
+    }
+
+    public static long entryBytes(String locPrefix, String locSuffix, String lastmod, String changefreq,
+            String priority) {
+        return "<url></url>".length() + elementBytes("loc", locPrefix) + valueBytes(locSuffix)
+                + elementBytes("lastmod", lastmod) + elementBytes("changefreq", changefreq)
+                + elementBytes("priority", priority);
+    }
+
+    private static long elementBytes(String name, String value) {
+        if (value == null) {
+            return 0;
+        }
+        return 2L * name.length() + "<></>".length() + valueBytes(value);
+    }
+
+    private static long valueBytes(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '&' || c == '<' || c == '>' || c == '"' || c == '\'') {
+                bytes += 6;
+            } else if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeMarkup("</urlset>");
+        flushBuffer();
+        out.flush();
+    }
+
+    private void writeElement(String open, String value, String close) throws IOException {
+        if (value != null) {
+            writeMarkup(open);
+            writeEscaped(value);
+            writeMarkup(close);
+        }
+    }
+
+    /** Writes ASCII markup as is. */
+    private void writeMarkup(String markup) throws IOException {
+        for (int i = 0; i < markup.length(); i++) {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte) markup.charAt(i);
+        }
+    }
+
+    /**
+     * Writes a value with the five XML special characters escaped, encoded as
+     * UTF-8. A lone surrogate is written as {@code ?}.
+     */
+    private void writeEscaped(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            if (count > buffer.length - MAX_CHAR_BYTES) {
+                flushBuffer();
+            }
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                put('&', 'a', 'm', 'p', ';');
+                break;
+            case '<':
+                put('&', 'l', 't', ';');
+                break;
+            case '>':
+                put('&', 'g', 't', ';');
+                break;
+            case '"':
+                put('&', 'q', 'u', 'o', 't', ';');
+                break;
+            case '\'':
+                put('&', 'a', 'p', 'o', 's', ';');
+                break;
+            default:
+                if (c < 0x80) {
+                    buffer[count++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[count++] = (byte) (0xC0 | (c >> 6));
+                    buffer[count++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    buffer[count++] = '?';
+                } else {
+                    buffer[count++] = (byte) (0xE0 | (c >> 12));
+                    buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[count++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+    }
+
+    private void put(char a, char b, char c, char d) {
+        buffer[count++] = (byte) a;
+        buffer[count++] = (byte) b;
+        buffer[count++] = (byte) c;
+        buffer[count++] = (byte) d;
+    }
+
+    private void put(char a, char b, char c, char d, char e) {
+        put(a, b, c, d);
+        buffer[count++] = (byte) e;
+    }
+
+    private void put(char a, char b, char c, char d, char e, char f) {
+        put(a, b, c, d);
+        buffer[count++] = (byte) e;
+        buffer[count++] = (byte) f;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
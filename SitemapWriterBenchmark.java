@@ -0,0 +1,105 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Compares the old DOM + Transformer sitemap path with {@link SitemapStreamWriter}.
+ * Run with {@code -prof gc} to see the per-page allocation difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SitemapWriterBenchmark {
+
+    @Param({ "5000", "50000" })
+    public int urls;
+
+    private String[] ids;
+    private String[] lastmods;
+
+    @Setup
+    public void setUp() {
+        ids = new String[urls];
+        lastmods = new String[urls];
+        for (int i = 0; i < urls; i++) {
+            ids[i] = "a1b2c3d4-" + i;
+            lastmods[i] = "2025-08-25T10:15:30Z";
+        }
+    }
+
+    @Benchmark
+    public String domTransformer() throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element urlset = doc.createElement("urlset");
+        urlset.setAttribute("xmlns", SitemapStreamWriter.SITEMAP_NS);
+        doc.appendChild(urlset);
+
+        for (int i = 0; i < urls; i++) {
+            Element url = doc.createElement("url");
+            urlset.appendChild(url);
+            url.appendChild(element(doc, "loc", "https://www.jobtrees.com/postid/" + ids[i]));
+            url.appendChild(element(doc, "lastmod", lastmods[i]));
+            url.appendChild(element(doc, "changefreq", "daily"));
+            url.appendChild(element(doc, "priority", "1.0"));
+        }
+
+        StringWriter writer = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc), new StreamResult(writer));
+        return writer.toString();
+    }
+
+    @Benchmark
+    public long streamWriter() throws IOException {
+        CountingSink sink = new CountingSink();
+        try (SitemapStreamWriter writer = new SitemapStreamWriter(sink)) {
+            for (int i = 0; i < urls; i++) {
+                writer.writeUrl("https://www.jobtrees.com/postid/", ids[i], lastmods[i], "daily", "1.0");
+            }
+        }
+        return sink.count;
+    }
+
+    private static Element element(Document doc, String name, String value) {
+        Element element = doc.createElement(name);
+        element.setTextContent(value);
+        return element;
+    }
+
+    /** Stands in for the upload stream so only serialization cost is measured. */
+    private static final class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
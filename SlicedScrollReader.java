@@ -0,0 +1,88 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+
+/**
+ * Reads a whole index through N scroll slices drained concurrently, one
+ * thread per slice. Throughput scales with the slice count up to the number
+ * of shards; beyond that slices share shards and stop helping.
+ * <p>
+ * The page consumer is called from several threads at once and must be
+ * thread-safe.
+ */
+public class SlicedScrollReader {
+
+	private final RestHighLevelClient client;
+	private final int slices;
+	private final long pauseMillis;
+
+	public SlicedScrollReader(RestHighLevelClient client, int slices, long pauseMillis) {
+		this.client = client;
+		this.slices = slices;
+		this.pauseMillis = pauseMillis;
+	}
+
+	public void read(SearchRequest searchRequest, Consumer<SearchHit[]> pageConsumer)
+			throws IOException, InterruptedException {
+		if (slices <= 1) {
+			drain(searchRequest, pageConsumer);
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(slices);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int slice = 0; slice < slices; slice++) {
+				SearchRequest sliceRequest = sliceRequest(searchRequest, slice);
+				futures.add(executor.submit(() -> {
+					drain(sliceRequest, pageConsumer);
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					futures.forEach(f -> f.cancel(true));
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw new IOException("Sliced scroll failed", cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private SearchRequest sliceRequest(SearchRequest searchRequest, int slice) {
+		SearchSourceBuilder source = searchRequest.source().shallowCopy();
+		source.slice(new SliceBuilder(slice, slices));
+		return new SearchRequest(searchRequest.indices()).source(source);
+	}
+
+	private void drain(SearchRequest searchRequest, Consumer<SearchHit[]> pageConsumer) throws IOException {
+		try (ScrollPageIterator pages = new ScrollPageIterator(client, searchRequest, pauseMillis)) {
+			while (pages.hasNext()) {
+				pageConsumer.accept(pages.next());
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+}
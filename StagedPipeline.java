@@ -0,0 +1,218 @@
+package com.jobtrees.jobpostings.service;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A chain of stages connected by bounded queues. Each stage runs its handler
+ * on a fixed number of threads; when a stage's queue is full,
+ * {@link Stage#submit} blocks, so a slow stage holds back the ones feeding it
+ * instead of letting work pile up in memory. With every stage busy, total
+ * time approaches that of the slowest stage rather than the sum of all.
+ * <p>
+ * The first handler failure stops the whole pipeline: queued items are
+ * dropped, workers are interrupted, blocked submitters are released with an
+ * exception, and {@link #await()} rethrows the original failure.
+ */
+public class StagedPipeline implements Closeable {
+
+    /** Processes one item; may submit results to a downstream stage. */
+    public interface Handler<T> {
+        void handle(T item) throws Exception;
+    }
+
+    private static final Object END = new Object();
+    private static final long POLL_MILLIS = 100;
+
+    private final ThreadFactory threadFactory;
+    private final List<Stage<?>> stages = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public StagedPipeline(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Starts a stage with {@code parallelism} workers reading from a queue
+     * of {@code capacity} items.
+     */
+    public synchronized <T> Stage<T> stage(String name, int parallelism, int capacity, Handler<T> handler) {
+        Stage<T> stage = new Stage<>(name, parallelism, capacity, handler);
+        stages.add(stage);
+        stage.start();
+        if (failure.get() != null) {
+            stage.abort();
+        }
+        return stage;
+    }
+
+    /**
+     * Stops the pipeline with {@code cause}, e.g. when the producer feeding
+     * the first stage fails. Only the first failure is kept.
+     */
+    public void fail(Throwable cause) {
+        if (failure.compareAndSet(null, cause)) {
+            List<Stage<?>> all;
+            synchronized (this) {
+                all = new ArrayList<>(stages);
+            }
+            all.forEach(Stage::abort);
+        }
+    }
+
+    /**
+     * Waits until every stage has drained after {@link Stage#finish()}, or
+     * until the pipeline failed, and rethrows the failure.
+     */
+    public void await() throws Exception {
+        List<Stage<?>> all;
+        synchronized (this) {
+            all = new ArrayList<>(stages);
+        }
+        try {
+            for (Stage<?> stage : all) {
+                stage.done.await();
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+            throw e;
+        }
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /** Aborts any stage still running. */
+    @Override
+    public void close() {
+        List<Stage<?>> all;
+        synchronized (this) {
+            all = new ArrayList<>(stages);
+        }
+        for (Stage<?> stage : all) {
+            if (stage.done.getCount() > 0) {
+                fail(new IllegalStateException("Pipeline closed before stage " + stage.name + " finished"));
+                return;
+            }
+        }
+    }
+
+    private void checkRunning() {
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new IllegalStateException("Pipeline stopped after a failure", cause);
+        }
+    }
+
+    public final class Stage<T> {
+
+        private final String name;
+        private final int parallelism;
+        private final Handler<T> handler;
+        private final BlockingQueue<Object> queue;
+        private final List<Thread> workers = new ArrayList<>();
+        private final AtomicInteger running;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Stage<?> downstream;
+
+        private Stage(String name, int parallelism, int capacity, Handler<T> handler) {
+            this.name = name;
+            this.parallelism = parallelism;
+            this.handler = handler;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.running = new AtomicInteger(parallelism);
+        }
+
+        /**
+         * Finishes {@code next} once this stage has drained, so finishing
+         * the first stage winds down the whole chain.
+         */
+        public void then(Stage<?> next) {
+            downstream = next;
+        }
+
+        /**
+         * Queues an item, blocking while the queue is full. Throws
+         * {@link IllegalStateException} once the pipeline has failed.
+         */
+        public void submit(T item) throws InterruptedException {
+            put(item);
+        }
+
+        /** Signals that no more items will be submitted. */
+        public void finish() throws InterruptedException {
+            for (int i = 0; i < parallelism; i++) {
+                put(END);
+            }
+        }
+
+        private void put(Object item) throws InterruptedException {
+            checkRunning();
+            while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkRunning();
+            }
+        }
+
+        private void start() {
+            for (int i = 0; i < parallelism; i++) {
+                Thread worker = threadFactory.newThread(this::work);
+                worker.setName(name + "-" + i);
+                workers.add(worker);
+            }
+            workers.forEach(Thread::start);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void work() {
+            try {
+                while (failure.get() == null) {
+                    Object item = queue.take();
+                    if (item == END) {
+                        break;
+                    }
+                    handler.handle((T) item);
+                }
+            } catch (InterruptedException e) {
+                // Usually an abort, which already recorded its failure; an
+                // interrupt from anywhere else must not pass for a clean finish.
+                fail(e);
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                if (running.decrementAndGet() == 0) {
+                    finishDownstream();
+                    done.countDown();
+                }
+            }
+        }
+
+        private void finishDownstream() {
+            Stage<?> next = downstream;
+            if (next == null || failure.get() != null) {
+                return;
+            }
+            try {
+                next.finish();
+            } catch (InterruptedException e) {
+                fail(e);
+            } catch (RuntimeException e) {
+                // The downstream stage failed meanwhile; its failure is kept.
+            }
+        }
+
+        private void abort() {
+            queue.clear();
+            workers.forEach(Thread::interrupt);
+        }
+    }
+}
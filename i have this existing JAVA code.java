@@ -3,44 +3,58 @@ i have this existing JAVA code
 package com.jobtrees.jobpostings.service;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.elasticsearch.ElasticsearchStatusException;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
-import org.elasticsearch.action.search.ClearScrollRequest;
-import org.elasticsearch.action.search.ClearScrollResponse;
 import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.MatchAllQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.reindex.BulkByScrollResponse;
 import org.elasticsearch.index.reindex.DeleteByQueryRequest;
-import org.elasticsearch.search.Scroll;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 
-import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.util.json.Jackson;
@@ -54,63 +68,146 @@ public class JobtreesElasticSearchService {
 	private static final String PRD_USER_PROFILE_ELASTIC_URL = "https://search-jobtrees-iqdimaxupmniwiygtkt7nxj3ku.us-east-1.es.amazonaws.com";
 	private static final String STG_USER_PROFILE_ELASTIC_URL = "https://search-stageelatic-fegphos2kqdtkacicwzq3izmpq.us-east-1.es.amazonaws.com";
 
-	private static LambdaLogger LOGGER;
-	private static JobtreesElasticSearchService INSTANCE;
+	private static final int BULK_MAX_ACTIONS = 1000;
+	private static final long BULK_MAX_BYTES = 5L * 1024 * 1024;
+	private static final long BULK_FLUSH_INTERVAL_MILLIS = 5000;
+	private static final int BULK_MAX_RETRIES = 5;
+	private static final long BULK_BASE_BACKOFF_MILLIS = 100;
+	private static final long BULK_MAX_BACKOFF_MILLIS = 10000;
+	private static final int ASYNC_MAX_CONCURRENT = 8;
+	private static final int ASYNC_CALLBACK_THREADS = ASYNC_MAX_CONCURRENT;
+
+	private static final int CONNECT_TIMEOUT_MILLIS = (int) Duration.ofSeconds(5).toMillis();
+	private static final int CONNECTION_REQUEST_TIMEOUT_MILLIS = (int) Duration.ofSeconds(10).toMillis();
+	private static final int SOCKET_TIMEOUT_MILLIS = (int) Duration.ofMinutes(2).toMillis();
+	private static final long KEEP_ALIVE_MILLIS = Duration.ofMinutes(1).toMillis();
+	private static final int DEFAULT_MAX_CONNECTIONS = 30;
+	private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+	private static final int REFERENCE_DATA_MAX_ENTRIES = 16;
+	private static final long REFERENCE_DATA_TTL_MILLIS = Duration.ofHours(12).toMillis();
+	private static final long REFERENCE_DATA_REFRESH_MILLIS = Duration.ofHours(1).toMillis();
+
+	private static final Map<String, JobtreesElasticSearchService> INSTANCES = new ConcurrentHashMap<>();
+
+	private final LambdaLogger logger;
+
+	private final String environment;
 
 	private final String elasticSearchUrl;
 
 	private final RestHighLevelClient client;
 
-	private JobtreesElasticSearchService(LambdaLogger logger, String serverEnvironment) {
-		LOGGER = logger;
-		if ("production".equalsIgnoreCase(serverEnvironment)) {
+	private final AsyncElasticSearchOperations asyncOperations;
+
+	/**
+	 * Completes {@link #async()} futures. Its own bounded pool, so stages that
+	 * block on it never tie up the common pool the rest of the JVM shares.
+	 */
+	private final ExecutorService asyncCallbacks = Executors.newFixedThreadPool(ASYNC_CALLBACK_THREADS,
+			new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "es-async-callback-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final ExecutorService referenceDataRefresher = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "reference-data-refresh");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final ReferenceDataCache<String, Object> referenceData = new ReferenceDataCache<>(
+			REFERENCE_DATA_MAX_ENTRIES, REFERENCE_DATA_TTL_MILLIS, REFERENCE_DATA_REFRESH_MILLIS, referenceDataRefresher);
+
+	private volatile long scrollPauseMillis;
+	private volatile int exportSlices;
+	private volatile int bulkConcurrency = 2;
+
+	private JobtreesElasticSearchService(LambdaLogger logger, String environment) {
+		this.logger = logger;
+		this.environment = environment;
+		if ("production".equals(environment)) {
 			elasticSearchUrl = PRD_USER_PROFILE_ELASTIC_URL;
 			client = elasticsearchClient(JobtreesConstants.PRD_AWS_ACCESS_KEY, JobtreesConstants.PRD_AWS_SECRET_KEY);
 		} else {
 			elasticSearchUrl = STG_USER_PROFILE_ELASTIC_URL;
 			client = elasticsearchClient(JobtreesConstants.STG_AWS_ACCESS_KEY, JobtreesConstants.STG_AWS_SECRET_KEY);
 		}
+		asyncOperations = new AsyncElasticSearchOperations(client, ASYNC_MAX_CONCURRENT, asyncCallbacks);
 	}
 
+	/**
+	 * Returns the service for the environment, creating it on first use. The
+	 * instance and its pooled connections live as long as the Lambda container,
+	 * so warm invocations skip client construction and the TLS handshake; it
+	 * is safe to share between threads.
+	 */
 	public static JobtreesElasticSearchService getInstance(LambdaLogger logger, String serverEnvironment) {
-		if (INSTANCE == null) {
-			INSTANCE = new JobtreesElasticSearchService(logger, serverEnvironment);
-		}
-		return INSTANCE;
+		String environment = "production".equalsIgnoreCase(serverEnvironment) ? "production" : "staging";
+		return INSTANCES.computeIfAbsent(environment, key -> new JobtreesElasticSearchService(logger, key));
+	}
+
+	/**
+	 * Non-blocking bulk, search, scroll and delete-by-query calls sharing this
+	 * service's client, for callers that want to overlap fetch, transform and
+	 * upload within one invocation.
+	 */
+	public AsyncElasticSearchOperations async() {
+		return asyncOperations;
 	}
 
+	/**
+	 * Closes the client. Only needed when the container is being torn down;
+	 * the next {@link #getInstance} call builds a fresh service.
+	 */
 	public void shutdown() {
+		INSTANCES.remove(environment, this);
+		referenceDataRefresher.shutdownNow();
 		try {
 			client.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		INSTANCE = null;
+		// After the client, and without dropping queued callbacks, so every
+		// future handed out completes.
+		asyncCallbacks.shutdown();
 	}
 
-	public void indexRecords(List<Map<String, Object>> listOfRecords, String index) {
-		BulkRequest request = new BulkRequest();
-		listOfRecords.forEach(record -> {
-			UpdateRequest indexRequest = new UpdateRequest();
-			indexRequest.index(index).id(record.get("id").toString())
-					.doc(Jackson.toJsonString(record), XContentType.JSON).docAsUpsert(true);
-			request.add(indexRequest);
-			// LOGGER.log("Index request: " + indexRequest);
-		});
-
-		executeRequest(request, 0);
+	public BulkResult indexRecords(List<Map<String, Object>> listOfRecords, String index) {
+		BulkIndexingPipeline pipeline = bulkPipeline();
+		try {
+			listOfRecords.forEach(record -> {
+				UpdateRequest indexRequest = new UpdateRequest();
+				indexRequest.index(index).id(record.get("id").toString())
+						.doc(Jackson.toJsonString(record), XContentType.JSON).docAsUpsert(true);
+				pipeline.add(indexRequest);
+				// logger.log("Index request: " + indexRequest);
+			});
+		} finally {
+			pipeline.close();
+		}
+		return pipeline.getResult();
 	}
 
-	public void indexDeleteRecords(List<String> listOfIds, String index) {
-		BulkRequest request = new BulkRequest();
-		listOfIds.forEach(id -> {
-			DeleteRequest deleteRequest = new DeleteRequest();
-			deleteRequest.index(index).id(id);
-			request.add(deleteRequest);
-			// LOGGER.log("Index request: " + indexRequest);
-		});
-
-		executeRequest(request, 0);
+	public BulkResult indexDeleteRecords(List<String> listOfIds, String index) {
+		BulkIndexingPipeline pipeline = bulkPipeline();
+		try {
+			listOfIds.forEach(id -> {
+				DeleteRequest deleteRequest = new DeleteRequest();
+				deleteRequest.index(index).id(id);
+				pipeline.add(deleteRequest);
+				// logger.log("Index request: " + indexRequest);
+			});
+		} finally {
+			pipeline.close();
+		}
+		return pipeline.getResult();
 	}
 
 	public void deleteIndex(String index) {
@@ -119,7 +216,7 @@ public class JobtreesElasticSearchService {
 			AcknowledgedResponse response = client.indices().delete(request, RequestOptions.DEFAULT);
 			System.err.println("DeleteIndex Response : " + response);
 		} catch (Exception e) {
-			LOGGER.log("Exception occurred: " + e);
+			logger.log("Exception occurred: " + e);
 			e.printStackTrace();
 		}
 	}
@@ -135,90 +232,192 @@ public class JobtreesElasticSearchService {
 			BulkByScrollResponse response = client.deleteByQuery(request, RequestOptions.DEFAULT);
 			System.err.println("DeleteIndex Response : " + response);
 		} catch (Exception e) {
-			LOGGER.log("Exception occurred: " + e);
+			logger.log("Exception occurred: " + e);
 			e.printStackTrace();
 		}
 	}
 
-	public void indexSuggestionRecords(Map<String, Map<String, Object>> suggestionModels) {
-		BulkRequest request = new BulkRequest();
-		suggestionModels.forEach((key, value) -> {
-			UpdateRequest indexRequest = new UpdateRequest();
-			indexRequest.index("company_suggestion_index").id(key).doc(Jackson.toJsonString(value), XContentType.JSON)
-					.docAsUpsert(true);
-			request.add(indexRequest);
-			LOGGER.log("Index request: " + indexRequest);
-		});
-
-		executeRequest(request, 0);
-	}
-
-	private void executeRequest(BulkRequest request, int retryAttempt) {
-		List<String> failedIds = new ArrayList<>();
-		BulkResponse response = null;
+	public BulkResult indexSuggestionRecords(Map<String, Map<String, Object>> suggestionModels) {
+		BulkIndexingPipeline pipeline = bulkPipeline();
 		try {
-			response = client.bulk(request, RequestOptions.DEFAULT);
-		} catch (IOException e) {
-			LOGGER.log("IOException occurred: " + e);
-			e.printStackTrace();
-		} catch (Exception e) {
-			e.printStackTrace();
-			LOGGER.log("Exception occured: " + e);
-			if (retryAttempt <= 3) {
-				LOGGER.log("Retrying...");
-				executeRequest(request, retryAttempt + 1);
-			} else {
-				LOGGER.log("Retrying falied. Retry attempt is greater than 3");
-			}
+			suggestionModels.forEach((key, value) -> {
+				UpdateRequest indexRequest = new UpdateRequest();
+				indexRequest.index("company_suggestion_index").id(key)
+						.doc(Jackson.toJsonString(value), XContentType.JSON).docAsUpsert(true);
+				pipeline.add(indexRequest);
+				logger.log("Index request: " + indexRequest);
+			});
+		} finally {
+			pipeline.close();
 		}
-		if (response != null) {
-			BulkItemResponse[] items = response.getItems();
-			for (BulkItemResponse item : items) {
-				if (item.getFailure() != null) {
-					LOGGER.log("Could not index item : " + item.getFailure().getId());
-					LOGGER.log("Reason : " + item.getFailure() + "\n");
-					failedIds.add(item.getFailure().getId());
-				}
-			}
-		}
-		LOGGER.log("List of failed Ids : " + failedIds);
+		return pipeline.getResult();
 	}
 
-	private ArrayList<SearchHit> executeSearch(SearchRequest searchRequest, int retryAttempt)
-			throws IOException, InterruptedException {
-
-		final Scroll scroll = new Scroll(TimeValue.timeValueMinutes(10L));
-		searchRequest.scroll(scroll);
-
-		SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-		String scrollId = searchResponse.getScrollId();
+	/**
+	 * Bulks are capped at 1000 actions or 5 MB, well under the domain's
+	 * request size limit, and flushed at least every 5 seconds.
+	 */
+	private BulkIndexingPipeline bulkPipeline() {
+		return new BulkIndexingPipeline(request -> executeRequest(request, 0), BULK_MAX_ACTIONS, BULK_MAX_BYTES,
+				BULK_FLUSH_INTERVAL_MILLIS, bulkConcurrency, logger);
+	}
 
-		ArrayList<SearchHit> allHits = new ArrayList<SearchHit>();
+	/**
+	 * Number of bulks allowed in flight at once while indexing.
+	 */
+	public void setBulkConcurrency(int bulkConcurrency) {
+		this.bulkConcurrency = bulkConcurrency;
+	}
 
-		SearchHit[] searchHits = searchResponse.getHits().getHits();
+	/**
+	 * Sends the bulk and resends only the items that failed with a retryable
+	 * status (429, 502, 503, 504), or the whole remainder when the call itself
+	 * fails, backing off exponentially with full jitter between attempts.
+	 */
+	private BulkResult executeRequest(BulkRequest request, int retryAttempt) {
+		BulkResult result = new BulkResult();
+		BulkRequest pending = request;
+		for (int attempt = retryAttempt;; attempt++) {
+			boolean canRetry = attempt < BULK_MAX_RETRIES;
+			BulkResponse response;
+			try {
+				response = client.bulk(pending, RequestOptions.DEFAULT);
+			} catch (IOException | RuntimeException e) {
+				logger.log("Exception occured: " + e);
+				boolean retryable = !(e instanceof ElasticsearchStatusException)
+						|| isRetryable(((ElasticsearchStatusException) e).status());
+				if (!canRetry || !retryable || !backOff(attempt)) {
+					logger.log("Giving up on " + pending.numberOfActions() + " items after " + (attempt + 1)
+							+ " attempts");
+					pending.requests().forEach(item -> result.addFailed(item.id()));
+					break;
+				}
+				result.addRetried(pending.numberOfActions());
+				continue;
+			}
 
-		while (searchHits != null && searchHits.length > 0) {
+			BulkRequest retry = new BulkRequest();
+			retry.timeout(pending.timeout());
+			retry.setRefreshPolicy(pending.getRefreshPolicy());
+			int succeeded = 0;
+			for (BulkItemResponse item : response.getItems()) {
+				if (!item.isFailed()) {
+					succeeded++;
+				} else if (canRetry && isRetryable(item.status())) {
+					retry.add(pending.requests().get(item.getItemId()));
+				} else {
+					logger.log("Could not index item : " + item.getFailure().getId());
+					logger.log("Reason : " + item.getFailure() + "\n");
+					result.addFailed(item.getFailure().getId());
+				}
+			}
+			result.addSucceeded(succeeded);
 
-			allHits.addAll(Arrays.asList(searchResponse.getHits().getHits()));
+			if (retry.numberOfActions() == 0) {
+				break;
+			}
+			logger.log("Retrying " + retry.numberOfActions() + " rejected items...");
+			if (!backOff(attempt)) {
+				retry.requests().forEach(item -> result.addFailed(item.id()));
+				break;
+			}
+			result.addRetried(retry.numberOfActions());
+			pending = retry;
+		}
+		logger.log("List of failed Ids : " + result.getFailedIds());
+		return result;
+	}
 
-			SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
+	private static boolean isRetryable(RestStatus status) {
+		return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.BAD_GATEWAY
+				|| status == RestStatus.SERVICE_UNAVAILABLE || status == RestStatus.GATEWAY_TIMEOUT;
+	}
 
-			scrollRequest.scroll(scroll);
+	/**
+	 * Sleeps a random time up to {@code 100ms * 2^attempt}, capped at 10s.
+	 * Returns false if interrupted, in which case the caller should give up.
+	 */
+	private static boolean backOff(int attempt) {
+		long ceiling = Math.min(BULK_MAX_BACKOFF_MILLIS, BULK_BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
 
-			searchResponse = client.searchScroll(scrollRequest, RequestOptions.DEFAULT);
+	/**
+	 * Pause between scroll pages. Defaults to none; raise it when a bulk export
+	 * competes with live traffic on the same domain.
+	 */
+	public void setScrollPauseMillis(long scrollPauseMillis) {
+		this.scrollPauseMillis = scrollPauseMillis;
+	}
 
-			scrollId = searchResponse.getScrollId();
+	/**
+	 * Number of scroll slices used by the full-index exports. Defaults to 0,
+	 * one slice per primary shard of the exported index as read from its
+	 * settings; more slices than shards adds contention without adding
+	 * throughput.
+	 */
+	public void setExportSlices(int exportSlices) {
+		this.exportSlices = exportSlices;
+	}
 
-			searchHits = searchResponse.getHits().getHits();
+	private SlicedScrollReader exportReader(String index) throws IOException {
+		int slices = exportSlices > 0 ? exportSlices : primaryShards(index);
+		return new SlicedScrollReader(client, slices, scrollPauseMillis);
+	}
 
-			Thread.sleep(100);
+	/** Most primary shards of any index behind {@code index}, which may be an alias. */
+	private int primaryShards(String index) throws IOException {
+		GetSettingsResponse response = client.indices().getSettings(
+				new GetSettingsRequest().indices(index).names(IndexMetadata.SETTING_NUMBER_OF_SHARDS),
+				RequestOptions.DEFAULT);
+		int shards = 1;
+		for (Iterator<Settings> settings = response.getIndexToSettings().valuesIt(); settings.hasNext();) {
+			shards = Math.max(shards, settings.next().getAsInt(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1));
+		}
+		return shards;
+	}
 
+	/**
+	 * Scrolls the whole result set, handing each page to {@code pageConsumer}
+	 * as it arrives. Only one page is held in memory at a time.
+	 */
+	public void scrollSearch(SearchRequest searchRequest, Consumer<SearchHit[]> pageConsumer)
+			throws IOException, InterruptedException {
+		try (ScrollPageIterator pages = new ScrollPageIterator(client, searchRequest, scrollPauseMillis)) {
+			while (pages.hasNext()) {
+				pageConsumer.accept(pages.next());
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
 		}
+	}
 
-		ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
-		clearScrollRequest.addScrollId(scrollId);
-		ClearScrollResponse clearScrollResponse = client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+	/**
+	 * Lazily scrolls the result set as a stream of hits. The stream must be
+	 * closed (try-with-resources) so an abandoned scroll is cleared.
+	 */
+	public Stream<SearchHit> streamSearch(SearchRequest searchRequest) {
+		ScrollPageIterator pages = new ScrollPageIterator(client, searchRequest, scrollPauseMillis);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED), false)
+				.flatMap(Arrays::stream).onClose(() -> {
+					try {
+						pages.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
 
+	private ArrayList<SearchHit> executeSearch(SearchRequest searchRequest, int retryAttempt)
+			throws IOException, InterruptedException {
+		ArrayList<SearchHit> allHits = new ArrayList<SearchHit>();
+		scrollSearch(searchRequest, page -> allHits.addAll(Arrays.asList(page)));
 		return allHits;
 	}
 
@@ -259,6 +458,16 @@ public class JobtreesElasticSearchService {
 	}
 
 	public ArrayList<SearchHit> getAllRecords(String index) throws IOException, InterruptedException {
+		ArrayList<SearchHit> allHits = new ArrayList<SearchHit>();
+		exportReader(index).read(allRecordsRequest(index), page -> {
+			synchronized (allHits) {
+				allHits.addAll(Arrays.asList(page));
+			}
+		});
+		return allHits;
+	}
+
+	private SearchRequest allRecordsRequest(String index) {
 		SearchSourceBuilder builder = new SearchSourceBuilder();
 		MatchAllQueryBuilder matchAllQuery = QueryBuilders.matchAllQuery();
 
@@ -269,10 +478,7 @@ public class JobtreesElasticSearchService {
 
 		SearchRequest searchRequest = new SearchRequest();
 		searchRequest.indices(index).source(builder);
-
-		ArrayList<SearchHit> searchHits = executeSearch(searchRequest, 3);
-
-		return searchHits;
+		return searchRequest;
 	}
 
 	public ArrayList<SearchHit> getJobPostingsByTtitles(String index, String title, List<String> titles)
@@ -296,19 +502,48 @@ public class JobtreesElasticSearchService {
 		return executeSearch(searchRequest, 3);
 	}
 
+	/**
+	 * Maps each main title to the ids of postings in {@code index} whose title
+	 * matches it or any of its other titles, e.g. the result of
+	 * {@link #getRolesFromElasticSearchForGivenTitle}. All roles are searched
+	 * together through {@code _msearch}, so this replaces one
+	 * {@link #getJobPostingsByTtitles} call per role.
+	 */
+	public Map<String, Set<String>> getJobPostingIdsByTitles(String index,
+			Map<String, ? extends Collection<String>> titlesByRole) throws IOException, InterruptedException {
+		return new BatchedTitleMatcher(client, index, 1000).match(titlesByRole);
+	}
+
 	private RestHighLevelClient elasticsearchClient(String accessKey, String secretKey) {
-		AWS4Signer signer = new AWS4Signer();
-		String serviceName = "es";
-		signer.setServiceName(serviceName);
-		signer.setRegionName("us-east-1");
-		HttpRequestInterceptor interceptor = new ElasticSearchRequestInterceptor(serviceName, signer,
-				new BasicAWSCredentials(accessKey, secretKey));
+		HttpRequestInterceptor interceptor = new ElasticSearchRequestInterceptor("es", "us-east-1",
+				new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKey, secretKey)));
 
 		return new RestHighLevelClient(RestClient.builder(HttpHost.create(elasticSearchUrl))
-				.setHttpClientConfigCallback(callback -> callback.addInterceptorLast(interceptor))
+				.setHttpClientConfigCallback(callback -> callback.addInterceptorLast(interceptor)
+						.setMaxConnTotal(envInt("ES_MAX_CONNECTIONS", DEFAULT_MAX_CONNECTIONS))
+						.setMaxConnPerRoute(envInt("ES_MAX_CONNECTIONS_PER_ROUTE", DEFAULT_MAX_CONNECTIONS_PER_ROUTE))
+						.setKeepAliveStrategy((response, context) -> KEEP_ALIVE_MILLIS)
+						.setDefaultIOReactorConfig(IOReactorConfig.custom().setSoKeepAlive(true).build()))
 				.setRequestConfigCallback(requestConfigBuilder -> requestConfigBuilder
-						.setConnectTimeout((int) Duration.ofHours(2).toMillis())
-						.setSocketTimeout((int) Duration.ofHours(2).toMillis())));
+						.setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+						.setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT_MILLIS)
+						.setSocketTimeout(SOCKET_TIMEOUT_MILLIS)));
+	}
+
+	/**
+	 * Reads a pool size from the Lambda's environment, falling back to
+	 * {@code defaultValue} when unset or not a number.
+	 */
+	private static int envInt(String name, int defaultValue) {
+		String value = System.getenv(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
 	}
 
 	public Map<String, Map<String, Object>> getMappedCompanySuggestionModel(Set<String> companies) {
@@ -326,27 +561,52 @@ public class JobtreesElasticSearchService {
 		return map;
 	}
 
-	public Map<String, List<String>> getRolesFromElasticSearchForGivenTitle(String title)
-			throws IOException, InterruptedException {
-		Map<String, List<String>> roleMap = new HashMap<String, List<String>>();
+	/**
+	 * Counters for the cached role, pay, education and industry lookups.
+	 */
+	public ReferenceDataCache.Stats getReferenceDataStats() {
+		return referenceData.stats();
+	}
 
-		SearchSourceBuilder builder = new SearchSourceBuilder();
-		MatchAllQueryBuilder matchAllQuery = QueryBuilders.matchAllQuery();
+	/**
+	 * Drops the cached lookups so the next call reads them again, e.g. right
+	 * after the roles index or the title mapping tables were updated.
+	 */
+	public void invalidateReferenceData() {
+		referenceData.invalidateAll();
+	}
 
-		builder.fetchSource(new String[] { "title" }, null);
-		builder.query(matchAllQuery);
-		builder.size(5000); // max is 10000
+	/**
+	 * Reads a lookup through the reference-data cache. The cached value is
+	 * shared between callers, so the public methods hand out copies.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T referenceData(String key, ReferenceDataCache.Loader<T> loader) throws IOException, InterruptedException {
+		try {
+			return (T) referenceData.get(key, loader::load);
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Could not load " + key, e);
+		}
+	}
 
-		SearchRequest searchRequest = new SearchRequest();
-		searchRequest.indices("roles_index_03_05_2023").source(builder);
+	/**
+	 * Maps every role title in the roles index, lower-cased, to its known
+	 * sub-titles and former titles. Served from memory while cached.
+	 */
+	public Map<String, List<String>> getRolesFromElasticSearchForGivenTitle(String title)
+			throws IOException, InterruptedException {
+		Map<String, List<String>> cached = referenceData("roles", this::loadRoleMappings);
+		Map<String, List<String>> roleMap = new HashMap<>(cached.size() * 4 / 3 + 1);
+		cached.forEach((role, titles) -> roleMap.put(role, new ArrayList<>(titles)));
+		return roleMap;
+	}
 
-		ArrayList<SearchHit> searchHits = executeSearch(searchRequest, 3);
-		for (SearchHit searchHit : searchHits) {
-			String roleTitle = (String) searchHit.getSourceAsMap().get("title");
-			if (roleTitle != null) {
-				List<String> jobtreesTitles = new ArrayList<String>();
-				roleMap.put(roleTitle.toLowerCase(), jobtreesTitles);
-			}
+	private Map<String, List<String>> loadRoleMappings() throws IOException, InterruptedException {
+		Map<String, List<String>> roleMap = new HashMap<String, List<String>>();
+		for (String roleTitle : taxonomy().lowerCaseTitles()) {
+			roleMap.put(roleTitle, new ArrayList<String>());
 		}
 
 		DynamoDBService dbService = DynamoDBService.getInstance();
@@ -368,144 +628,105 @@ public class JobtreesElasticSearchService {
 
 		System.out.println("Total role mappings : " + roleMap.size());
 
-		// shutdown();
 		return roleMap;
 	}
 
 	public ArrayList<String> getEducationFromElasticSearch() throws IOException, InterruptedException {
-		SearchSourceBuilder builder = new SearchSourceBuilder();
-		MatchAllQueryBuilder matchAllQuery = QueryBuilders.matchAllQuery();
-
-		builder.fetchSource(new String[] { "commonDegree" }, null);
-		builder.query(matchAllQuery);
-		builder.size(5000); // max is 10000
-
-		SearchRequest searchRequest = new SearchRequest();
-		// searchRequest.indices("education_data").source(builder);
-		searchRequest.indices("roles_index_03_05_2023").source(builder);
+		return new ArrayList<>(taxonomy().education());
+	}
 
-		ArrayList<SearchHit> searchHits = executeSearch(searchRequest, 3);
-		ArrayList<String> roles = new ArrayList<>();
-		for (SearchHit searchHit : searchHits) {
-			String roleTitle = (String) searchHit.getSourceAsMap().get("commonDegree");
-			if (roleTitle != null) {
-				roles.add(roleTitle);
-			}
-		}
+	public ArrayList<String> getIndustriesFromElasticSearch() throws IOException, InterruptedException {
+		return new ArrayList<>(taxonomy().industries());
+	}
 
-		shutdown();
-		return roles;
+	/**
+	 * The cached role taxonomy that backs the role, pay, education and
+	 * industry lookups.
+	 */
+	private RoleTaxonomy taxonomy() throws IOException, InterruptedException {
+		return referenceData("taxonomy", this::loadTaxonomy);
 	}
 
-	public ArrayList<String> getIndustriesFromElasticSearch() throws IOException, InterruptedException {
+	/**
+	 * Scrolls {@code roles_index_03_05_2023} once, fetching every field the
+	 * taxonomy lookups need.
+	 */
+	private RoleTaxonomy loadTaxonomy() throws IOException, InterruptedException {
 		SearchSourceBuilder builder = new SearchSourceBuilder();
 		MatchAllQueryBuilder matchAllQuery = QueryBuilders.matchAllQuery();
 
-		builder.fetchSource(new String[] { "industries" }, null);
+		builder.fetchSource(new String[] { "title", "averagePay", "commonDegree", "industries" }, null);
 		builder.query(matchAllQuery);
 		builder.size(5000); // max is 10000
 
 		SearchRequest searchRequest = new SearchRequest();
-		// searchRequest.indices("education_data").source(builder);
 		searchRequest.indices("roles_index_03_05_2023").source(builder);
 
-		ArrayList<SearchHit> searchHits = executeSearch(searchRequest, 3);
-		ArrayList<String> roles = new ArrayList<>();
-		for (SearchHit searchHit : searchHits) {
-			List<String> industries = (List<String>) searchHit.getSourceAsMap().get("industries");
-			if (industries != null) {
-				roles.addAll(industries);
+		RoleTaxonomy.Builder taxonomy = new RoleTaxonomy.Builder();
+		scrollSearch(searchRequest, page -> {
+			for (SearchHit searchHit : page) {
+				Map<String, Object> source = searchHit.getSourceAsMap();
+				taxonomy.add((String) source.get("title"), (Number) source.get("averagePay"),
+						(String) source.get("commonDegree"), (List<?>) source.get("industries"));
 			}
-		}
-
-		shutdown();
-		return roles;
+		});
+		RoleTaxonomy snapshot = taxonomy.build();
+		System.out.println("Roles in taxonomy : " + snapshot.size());
+		return snapshot;
 	}
 
+	/**
+	 * Every posting in the index as a read-only set view over a
+	 * {@link JobSnapshot}; the {@link Job}s are created while iterating.
+	 * Adding or removing throws {@link UnsupportedOperationException}; copy
+	 * the set into a {@code HashSet} first to change it.
+	 */
 	public Set<Job> getAllJobPostings(String index) throws IOException, InterruptedException {
-		Set<Job> esJobList = new HashSet<Job>();
-		ArrayList<SearchHit> hits = getAllRecords(index);
-
-		for (SearchHit hit : hits) {
-			Map<String, Object> source = hit.getSourceAsMap();
-			Job job = new Job(hit.getId());
-			if (source.get("postingDate") != null) {
-				job.setImportdate(source.get("postingDate").toString());
-			}
-			if (source.get("title") != null) {
-				job.setTitle(source.get("title").toString());
-			}
-			if (source.get("company") != null) {
-				job.setCompany(source.get("company").toString());
-			}
-			if (source.get("city") != null) {
-				job.setCity(source.get("city").toString());
-			}
-			if (source.get("postcode") != null) {
-				job.setZip(source.get("postcode").toString());
-			}
-			esJobList.add(job);
-		}
-		System.out.println("ES Jobs Count : " + esJobList.size());
-		return esJobList;
+		return getJobSnapshot(index).jobs();
 	}
 
+	/**
+	 * Every posting in the index as a read-only set view over a
+	 * {@link JobSnapshot}; the {@link ESJob}s are created while iterating.
+	 * Read-only, like {@link #getAllJobPostings}.
+	 */
 	public Set<ESJob> getJobPostings(String index) throws IOException, InterruptedException {
-		Set<ESJob> esJobList = new HashSet<ESJob>();
-		ArrayList<SearchHit> hits = getAllRecords(index);
-
-		for (SearchHit hit : hits) {
-			Map<String, Object> source = hit.getSourceAsMap();
-			ESJob job = new ESJob(hit.getId());
-			if (source.get("postingDate") != null) {
-				job.setImportdate(source.get("postingDate").toString());
-			}
-			if (source.get("title") != null) {
-				job.setTitle(source.get("title").toString());
-			}
-			if (source.get("company") != null) {
-				job.setCompany(source.get("company").toString());
-			}
-			if (source.get("city") != null) {
-				job.setCity(source.get("city").toString());
-			}
-			if (source.get("postcode") != null) {
-				job.setZip(source.get("postcode").toString());
-			}
-			esJobList.add(job);
-		}
-		System.out.println("ES Jobs Count : " + esJobList.size());
-		return esJobList;
+		return getJobSnapshot(index).esJobs();
 	}
 
-	public Map<String, Integer> getNationalPayForRoles() {
-		{
-			Map<String, Integer> roleMap = new HashMap<String, Integer>();
-
-			SearchSourceBuilder builder = new SearchSourceBuilder();
-			MatchAllQueryBuilder matchAllQuery = QueryBuilders.matchAllQuery();
-
-			builder.fetchSource(new String[] { "title", "averagePay" }, null);
-			builder.query(matchAllQuery);
-			builder.size(5000); // max is 10000
-
-			SearchRequest searchRequest = new SearchRequest();
-			searchRequest.indices("roles_index_03_05_2023").source(builder);
-			try {
-				ArrayList<SearchHit> searchHits = executeSearch(searchRequest, 3);
-				for (SearchHit searchHit : searchHits) {
-					String roleTitle = (String) searchHit.getSourceAsMap().get("title");
-					Integer avgPay = (Integer) searchHit.getSourceAsMap().get("averagePay");
-					roleMap.put(roleTitle, avgPay);
-				}
-			} catch (Exception e) {
-				System.out.println(e.getMessage());
-			}
+	/**
+	 * Reads the id, title, company, city, postcode and posting date of every
+	 * posting into a compact columnar snapshot, parsing each {@code _source}
+	 * as it streams in over the sliced scroll.
+	 */
+	public JobSnapshot getJobSnapshot(String index) throws IOException, InterruptedException {
+		SearchSourceBuilder builder = new SearchSourceBuilder();
+		builder.fetchSource(new String[] { "title", "company", "postingDate", "city", "postcode" }, null);
+		builder.query(QueryBuilders.matchAllQuery());
+		builder.size(5000); // max is 10000
 
-			// shutdown();
-			return roleMap;
+		JobSnapshot.Builder snapshot = new JobSnapshot.Builder();
+		try {
+			exportReader(index).read(new SearchRequest(index).source(builder), snapshot::addPage);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
 		}
+		JobSnapshot jobs = snapshot.build();
+		System.out.println("ES Jobs Count : " + jobs.size());
+		return jobs;
+	}
 
+	/**
+	 * Average national pay per role title, read from the cached taxonomy. A
+	 * failed load returns an empty map and is not cached.
+	 */
+	public Map<String, Integer> getNationalPayForRoles() {
+		try {
+			return taxonomy().nationalPay();
+		} catch (Exception e) {
+			System.out.println(e.getMessage());
+			return new HashMap<>();
+		}
 	}
 }
 
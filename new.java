@@ -1,37 +1,46 @@
 package com.jobtrees.jobpostings.service;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.*;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequestInterceptor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 
 public class JobtreesElasticSearchService {
 
@@ -44,145 +53,758 @@ public class JobtreesElasticSearchService {
             "https://www.bing.com/indexnow"
     );
 
+    private static final int MAX_PAGE_SIZE = 10000;
+    private static final int STAGE_QUEUE_CAPACITY = 2;
+    private static final int DEFAULT_UPLOAD_PARALLELISM = 32;
+    /** Connections the default S3 client may open; how many are used is up to {@link #setUploadParallelism}. */
+    private static final int MAX_S3_CONNECTIONS = 256;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final long WATERMARK_OVERLAP_MILLIS = Duration.ofMinutes(5).toMillis();
+    private static final long CHECKPOINT_MAX_AGE_MILLIS = Duration.ofDays(1).toMillis();
+    private static final String MAIN_SITEMAP = "sitemap_Alljobs.xml";
+
+    /** Date fields a posting's {@code lastmod} comes from, in order of preference. */
+    private static final String[] LASTMOD_FIELDS = { "updatedDate", "postingDate" };
+
     private RestHighLevelClient client;
-    private S3Client s3Client;
+    private S3AsyncClient s3Client;
+    private S3AsyncUploader uploader;
+    private final IndexNowSubmitter indexNow =
+            new IndexNowSubmitter("www.jobtrees.com", INDEXNOW_API_KEY, INDEXNOW_ENDPOINTS);
+    private boolean usePointInTime;
+    private boolean gzipSitemaps;
+    private Path manifestDirectory = Paths.get("/tmp/sitemap-manifests");
+    private int fetchParallelism;
+    private int renderParallelism = Runtime.getRuntime().availableProcessors();
+    private ThreadFactory sitemapThreads = Executors.defaultThreadFactory();
+    private long runDeadline = Long.MAX_VALUE;
 
     public JobtreesElasticSearchService() {
         this.client = new RestHighLevelClient(RestClient.builder(HttpHost.create("https://search-jobtrees-iqdimaxupmniwiygtkt7nxj3ku.us-east-1.es.amazonaws.com")));
-        this.s3Client = S3Client.builder()
+        // Retries are left to S3AsyncUploader, so one policy decides them.
+        this.s3Client = S3AsyncClient.builder()
                 .region(Region.of(REGION))
                 .credentialsProvider(StaticCredentialsProvider.create(
                         AwsBasicCredentials.create("your-access-key", "your-secret-key")))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(MAX_S3_CONNECTIONS))
+                .overrideConfiguration(ClientOverrideConfiguration.builder().retryPolicy(RetryPolicy.none()).build())
                 .build();
+        this.uploader = new S3AsyncUploader(s3Client, BUCKET_NAME, PUBLIC_PATH, DEFAULT_UPLOAD_PARALLELISM);
+    }
+
+    /**
+     * Uses the given clients, with at most {@code maxConcurrentUploads} PUTs
+     * in flight. The S3 client should have its retries turned off; see
+     * {@link S3AsyncUploader}.
+     */
+    public JobtreesElasticSearchService(RestHighLevelClient client, S3AsyncClient s3Client,
+            int maxConcurrentUploads) {
+        this.client = client;
+        this.s3Client = s3Client;
+        this.uploader = new S3AsyncUploader(s3Client, BUCKET_NAME, PUBLIC_PATH, maxConcurrentUploads);
+    }
+
+    public boolean generateSitemapsFromExistingJobs(String indexName, int pageSize) throws Exception {
+        return generateSitemaps(Collections.singletonList(indexName), pageSize);
+    }
+
+    /**
+     * Regenerates the sitemaps of several indices at once and then writes a
+     * single {@code sitemap_Alljobs.xml} index covering all of them, in the
+     * order the indices were given.
+     * <p>
+     * Each index's progress is checkpointed as its files are uploaded, and a
+     * run that failed or ran out of time picks up where it stopped. Indices
+     * that finished keep their checkpoint until the index file is written, so
+     * they are not walked again. Returns false if {@link #setRunDeadline}
+     * stopped the run first; calling again continues it, and the index file
+     * is written once every index is done.
+     */
+    public boolean generateSitemaps(List<String> indices, int pageSize) throws Exception {
+        long runStarted = System.currentTimeMillis();
+        return forEachIndex(indices, indexName -> generateIndexSitemaps(indexName, pageSize, runStarted));
+    }
+
+    /**
+     * Same as {@link #generateSitemaps(List, int)}; {@code workers} is no
+     * longer used.
+     *
+     * @deprecated files are rendered and uploaded on the pipeline's own
+     *             stage threads; choose them, e.g. virtual threads, with
+     *             {@link #setSitemapThreadFactory} and call
+     *             {@link #generateSitemaps(List, int)}.
+     */
+    @Deprecated
+    public boolean generateSitemaps(List<String> indices, int pageSize, ExecutorService workers) throws Exception {
+        return generateSitemaps(indices, pageSize);
     }
 
-    public void generateSitemapsFromExistingJobs(String indexName, int pageSize) throws Exception {
-        int page = 0;
-        List<String> validFiles = new ArrayList<>();
+    /**
+     * Rewrites only the sitemap files touched by postings that changed since
+     * the previous run, using the manifest that run left in
+     * {@link #setManifestDirectory}. An index without a usable manifest gets a
+     * full run instead. Hard-deleted postings are not visible to a change
+     * query, so a periodic full run is still needed to drop them.
+     */
+    public boolean generateSitemapsIncrementally(List<String> indices, int pageSize) throws Exception {
+        long runStarted = System.currentTimeMillis();
+        return forEachIndex(indices, indexName -> {
+            SitemapManifest manifest = SitemapManifest.load(manifestPath(indexName));
+            if (manifest == null || !manifest.getExtension().equals(sitemapExtension())
+                    || Files.exists(checkpointPath(indexName))) {
+                return generateIndexSitemaps(indexName, pageSize, runStarted);
+            }
+            return updateIndexSitemaps(indexName, pageSize, manifest, runStarted);
+        });
+    }
+
+    public void setManifestDirectory(Path manifestDirectory) {
+        this.manifestDirectory = manifestDirectory;
+    }
 
-        while (true) {
-            List<SearchHit> hits = fetchJobs(indexName, page * pageSize, pageSize);
-            if (hits.isEmpty()) break;
+    /**
+     * Stops fetching once this time (epoch millis) has passed, e.g. shortly
+     * before a Lambda's timeout. Files already fetched are still uploaded and
+     * checkpointed, so the next invocation resumes from there.
+     */
+    public void setRunDeadline(long runDeadline) {
+        this.runDeadline = runDeadline;
+    }
 
-            String xml = generateSitemapXml(hits);
-            String fileName = indexName + "_" + (page + 1) + ".xml";
-            uploadToS3(fileName, xml);
-            submitToIndexNow("https://www.jobtrees.com/api/sitemap/" + fileName);
-            validFiles.add(PUBLIC_PATH + fileName);
-            page++;
+    /**
+     * Returns false, without writing the index file, if any index stopped
+     * early. With no indices there is nothing to do: the index file is left
+     * as it is rather than replaced by an empty one that would drop every
+     * sitemap.
+     */
+    private boolean forEachIndex(List<String> indices, IndexTask task) throws Exception {
+        if (indices.isEmpty()) {
+            System.out.println("No indices given, " + MAIN_SITEMAP + " left unchanged");
+            return true;
         }
+        ExecutorService fetchers = Executors.newFixedThreadPool(
+                fetchParallelism > 0 ? Math.min(fetchParallelism, indices.size()) : indices.size());
+        try {
+            List<Future<List<SitemapFile>>> perIndex = new ArrayList<>();
+            for (String indexName : indices) {
+                perIndex.add(fetchers.submit(() -> task.run(indexName)));
+            }
 
-        generateMainSitemap(validFiles);
+            List<SitemapFile> validFiles = new ArrayList<>();
+            boolean complete = true;
+            for (Future<List<SitemapFile>> files : perIndex) {
+                List<SitemapFile> indexFiles = await(files);
+                if (indexFiles == null) {
+                    complete = false;
+                } else {
+                    validFiles.addAll(indexFiles);
+                }
+            }
+            if (!complete) {
+                // Nothing is submitted yet; finished indices queue their URLs
+                // again from their checkpoints when the run is resumed.
+                System.out.println(MAIN_SITEMAP + " not written, the run stopped at its deadline");
+                return false;
+            }
+            generateMainSitemap(validFiles);
+            for (String indexName : indices) {
+                Files.deleteIfExists(checkpointPath(indexName));
+            }
+        } finally {
+            fetchers.shutdownNow();
+        }
+        submitToIndexNow();
+        return true;
     }
 
-    private List<SearchHit> fetchJobs(String index, int from, int size) throws IOException {
-        SearchRequest request = new SearchRequest(index);
-        SearchSourceBuilder builder = new SearchSourceBuilder();
-        builder.query(QueryBuilders.matchAllQuery());
-        builder.from(from);
-        builder.size(size);
-        request.source(builder);
+    /**
+     * Writes page files as {@code .xml.gz}, compressed on the render stage.
+     * The index file stays plain XML.
+     */
+    public void setGzipSitemaps(boolean gzipSitemaps) {
+        this.gzipSitemaps = gzipSitemaps;
+    }
 
-        SearchResponse response = client.search(request, RequestOptions.DEFAULT);
-        return Arrays.asList(response.getHits().getHits());
+    /** Indices fetched at the same time; 0, the default, fetches all of them at once. */
+    public void setFetchParallelism(int fetchParallelism) {
+        this.fetchParallelism = fetchParallelism;
     }
 
-    private String generateSitemapXml(List<SearchHit> hits) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.newDocument();
+    /** Threads per index hashing, rendering and compressing sitemap files. */
+    public void setRenderParallelism(int renderParallelism) {
+        this.renderParallelism = renderParallelism;
+    }
 
-        Element urlset = doc.createElement("urlset");
-        urlset.setAttribute("xmlns", "http://www.sitemaps.org/schemas/sitemap/0.9");
-        doc.appendChild(urlset);
+    /**
+     * @deprecated the shared worker pool is gone; this now sets
+     *             {@link #setRenderParallelism}, the closest equivalent.
+     *             Uploads are limited by {@link #setUploadParallelism}.
+     */
+    @Deprecated
+    public void setSitemapWorkers(int sitemapWorkers) {
+        setRenderParallelism(sitemapWorkers);
+    }
 
-        for (SearchHit hit : hits) {
-            Map<String, Object> source = hit.getSourceAsMap();
-            if (!"Active".equalsIgnoreCase((String) source.getOrDefault("status", "Active"))) continue;
+    /**
+     * PUTs to S3 in flight at once, across all indices; 32 by default. The
+     * default client opens up to 256 connections. Set it between runs.
+     */
+    public void setUploadParallelism(int uploadParallelism) {
+        this.uploader = new S3AsyncUploader(s3Client, BUCKET_NAME, PUBLIC_PATH, uploadParallelism);
+    }
 
-            Element url = doc.createElement("url");
-            urlset.appendChild(url);
+    /** Creates the pipeline's stage threads, e.g. virtual threads. */
+    public void setSitemapThreadFactory(ThreadFactory sitemapThreads) {
+        this.sitemapThreads = sitemapThreads;
+    }
 
-            Element loc = doc.createElement("loc");
-            loc.setTextContent("https://www.jobtrees.com/postid/" + hit.getId());
-            url.appendChild(loc);
+    /**
+     * Regenerates every sitemap file of one index through a
+     * {@link StagedPipeline}: this thread fetches pages in order, a single
+     * split thread turns them into files within the protocol limits, and the
+     * stage from {@link #renderStage} renders and uploads them. Each queue
+     * holds {@code STAGE_QUEUE_CAPACITY} items, so the next page is fetched
+     * while earlier files are still rendering and uploading, but a slow
+     * upload holds back fetching instead of piling up files in memory.
+     * <p>
+     * Every finished file is committed to a {@link SitemapCheckpoint}. If one
+     * from an earlier, unfinished run exists, its files are kept and the walk
+     * resumes after the last posting they cover; the run keeps the earlier
+     * start time as its watermark so no change is missed. A resumed walk does
+     * not open a point in time: a new one has its own {@code _shard_doc}
+     * tiebreakers, which the checkpointed position does not have. For the
+     * same reason a walk that has to sort on {@code _shard_doc}, with no
+     * unique id field to sort on, cannot resume and starts over. If the
+     * checkpoint says the index was already completed, its files are returned
+     * as they are. Returns null when the deadline stopped the walk, leaving
+     * the checkpoint for the next run.
+     * <p>
+     * Postings added, updated or removed since the previous run's manifest
+     * are queued for IndexNow once every file is uploaded. Without a previous
+     * manifest nothing is queued, rather than every posting in the index.
+     */
+    private List<SitemapFile> generateIndexSitemaps(String indexName, int pageSize, long runStarted)
+            throws Exception {
+        SitemapManifest previous = SitemapManifest.load(manifestPath(indexName));
+        Set<String> changedIds = new LinkedHashSet<>();
+        SitemapManifest resumed = new SitemapManifest(indexName, sitemapExtension(), runStarted);
+        SitemapCheckpoint checkpoint = SitemapCheckpoint.resume(checkpointPath(indexName), indexName,
+                sitemapExtension(), runStarted - CHECKPOINT_MAX_AGE_MILLIS, resumed);
+        if (checkpoint != null && checkpoint.isComplete()) {
+            checkpoint.close();
+            resumed.setWatermark(checkpoint.getRunStarted());
+            resumed.save(manifestPath(indexName));
+            queueJobUrls(new LinkedHashSet<>(checkpoint.getChangedIds()));
+            System.out.println(indexName + ": already completed, " + checkpoint.getCommittedFiles() + " files");
+            return resumed.files();
+        }
+        PostingFieldTypes fields = PostingFieldTypes.load(client, indexName);
+        if (checkpoint != null && PostingFieldTypes.SHARD_DOC.equals(fields.uniqueSortField())) {
+            checkpoint.close();
+            checkpoint = null;
+            System.out.println(indexName + ": no unique id field to resume on, starting over");
+        }
+        SitemapManifest manifest = checkpoint != null ? resumed
+                : new SitemapManifest(indexName, sitemapExtension(), runStarted);
+        if (checkpoint == null) {
+            checkpoint = SitemapCheckpoint.start(checkpointPath(indexName), indexName, sitemapExtension(),
+                    runStarted);
+        } else {
+            manifest.setWatermark(checkpoint.getRunStarted());
+            for (String id : manifest.ids()) {
+                diffAgainstPrevious(previous, id, manifest.lastmodOf(id), changedIds);
+            }
+            System.out.println(indexName + ": resuming after " + checkpoint.getCommittedFiles() + " files");
+        }
+        SitemapCheckpoint progress = checkpoint;
+        SitemapFileSplitter splitter = new SitemapFileSplitter(indexName, sitemapExtension(),
+                progress.getCommittedFiles());
+        AtomicInteger uploaded = new AtomicInteger();
+        List<CompletableFuture<Void>> uploads = Collections.synchronizedList(new ArrayList<>());
+        boolean stopped = false;
 
-            Element lastmod = doc.createElement("lastmod");
-            String updated = Optional.ofNullable((String) source.get("updatedDate"))
-                    .orElse((String) source.get("postingDate"));
-            lastmod.setTextContent(updated);
-            url.appendChild(lastmod);
+        try {
+            try (StagedPipeline pipeline = new StagedPipeline(sitemapThreads)) {
+                StagedPipeline.Stage<SitemapChunk> render = renderStage(pipeline, indexName, manifest, progress,
+                        chunk -> previous == null ? null : previous.hashOf(chunk.getFileName()), uploads,
+                        uploaded);
+                // An empty page marks the end of the index.
+                StagedPipeline.Stage<List<SearchHit>> split = pipeline.stage(indexName + "-split", 1,
+                        STAGE_QUEUE_CAPACITY, hits -> {
+                            if (hits.isEmpty()) {
+                                SitemapChunk last = splitter.finish();
+                                if (last != null) {
+                                    render.submit(last);
+                                }
+                                return;
+                            }
+                            for (SearchHit hit : hits) {
+                                if (!isActive(hit)) {
+                                    continue;
+                                }
+                                String updated = lastmod(hit);
+                                diffAgainstPrevious(previous, hit.getId(), updated, changedIds);
+                                SitemapChunk full = splitter.add(hit.getId(), updated, hit.getSortValues()[0]);
+                                if (full != null) {
+                                    render.submit(full);
+                                }
+                            }
+                        });
+                split.then(render);
 
-            url.appendChild(createElement(doc, "changefreq", "daily"));
-            url.appendChild(createElement(doc, "priority", "1.0"));
+                Object resumeAfter = progress.getResumeAfter();
+                try (SearchAfterCursor cursor = openJobCursor(indexName, pageSize, fields, resumeAfter == null)) {
+                    if (resumeAfter != null) {
+                        cursor.startAfter(resumeAfter);
+                    }
+                    List<SearchHit> hits;
+                    do {
+                        if (System.currentTimeMillis() >= runDeadline) {
+                            // The partly filled file is dropped; the next run fetches it again.
+                            stopped = true;
+                            break;
+                        }
+                        hits = cursor.nextPage();
+                        split.submit(hits);
+                    } while (!hits.isEmpty());
+                    split.finish();
+                } catch (InterruptedException e) {
+                    pipeline.fail(e);
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    pipeline.fail(e);
+                }
+                pipeline.await();
+            }
+            awaitUploads(uploads);
+            if (!stopped) {
+                if (previous != null) {
+                    changedIds.addAll(previous.ids());
+                }
+                // Completed before the manifest is saved: a crash in between
+                // finds the index done and saves the manifest then.
+                progress.complete(changedIds);
+            }
+        } finally {
+            progress.close();
+        }
+        if (stopped) {
+            System.out.println(indexName + ": stopped at the deadline after " + progress.getCommittedFiles()
+                    + " files, uploaded " + uploaded + " in this run");
+            return null;
         }
 
-        StringWriter writer = new StringWriter();
-        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc), new StreamResult(writer));
-        return writer.toString();
+        List<SitemapFile> validFiles = manifest.files();
+        manifest.save(manifestPath(indexName));
+        System.out.println(indexName + ": uploaded " + uploaded + " of " + validFiles.size()
+                + " sitemap files, the rest were unchanged");
+        queueJobUrls(changedIds);
+        return validFiles;
     }
 
-    private Element createElement(Document doc, String name, String value) {
-        Element element = doc.createElement(name);
-        element.setTextContent(value);
-        return element;
+    /**
+     * Adds the posting to {@code changedIds} if it is new or its
+     * {@code lastmod} moved since the previous run, and takes it off
+     * {@code previous} so that only removed postings are left there.
+     */
+    private static void diffAgainstPrevious(SitemapManifest previous, String id, String lastmod,
+            Set<String> changedIds) {
+        if (previous == null) {
+            return;
+        }
+        if (!previous.contains(id) || !Objects.equals(previous.lastmodOf(id), lastmod)) {
+            changedIds.add(id);
+        }
+        previous.remove(id);
     }
 
-    private void uploadToS3(String fileName, String content) {
-        PutObjectRequest request = PutObjectRequest.builder()
-                .bucket(BUCKET_NAME)
-                .key(PUBLIC_PATH + fileName)
-                .contentType("application/xml")
-                .acl("public-read")
-                .build();
-        s3Client.putObject(request, RequestBody.fromString(content));
-    }
+    /**
+     * Applies the postings changed since the manifest's watermark and
+     * rewrites only the files they touched. Inactive postings are dropped
+     * from their file; new ones go into the last file while it has room.
+     */
+    private List<SitemapFile> updateIndexSitemaps(String indexName, int pageSize, SitemapManifest manifest,
+            long runStarted) throws Exception {
+        PostingFieldTypes fields = PostingFieldTypes.load(client, indexName);
+        for (String field : LASTMOD_FIELDS) {
+            if (!fields.isDate(field)) {
+                // A range on a text field compares terms, not instants, and
+                // would miss changes; only a full walk is reliable then.
+                System.out.println(indexName + ": " + field + " is not mapped as a date, running in full");
+                return generateIndexSitemaps(indexName, pageSize, runStarted);
+            }
+        }
+        Set<String> dirty = new LinkedHashSet<>();
+        Set<String> changedIds = new LinkedHashSet<>();
+        try (SearchAfterCursor cursor = openChangedJobCursor(indexName, pageSize, fields,
+                manifest.getWatermark() - WATERMARK_OVERLAP_MILLIS)) {
+            while (true) {
+                List<SearchHit> hits = cursor.nextPage();
+                if (hits.isEmpty()) break;
+
+                for (SearchHit hit : hits) {
+                    String fileName;
+                    if (isActive(hit)) {
+                        String updated = lastmod(hit);
+                        if (manifest.contains(hit.getId())
+                                && Objects.equals(manifest.lastmodOf(hit.getId()), updated)) {
+                            continue;
+                        }
+                        fileName = manifest.upsert(hit.getId(), updated);
+                    } else {
+                        fileName = manifest.remove(hit.getId());
+                    }
+                    if (fileName != null) {
+                        dirty.add(fileName);
+                        changedIds.add(hit.getId());
+                    }
+                }
+            }
+        }
 
-    private void submitToIndexNow(String url) {
-        for (String endpoint : INDEXNOW_ENDPOINTS) {
+        AtomicInteger uploaded = new AtomicInteger();
+        List<CompletableFuture<Void>> uploads = Collections.synchronizedList(new ArrayList<>());
+        try (StagedPipeline pipeline = new StagedPipeline(sitemapThreads)) {
+            StagedPipeline.Stage<SitemapChunk> render = renderStage(pipeline, indexName, manifest, null,
+                    chunk -> manifest.hashOf(chunk.getFileName()), uploads, uploaded);
             try {
-                URL obj = new URL(endpoint);
-                HttpURLConnection conn = (HttpURLConnection) obj.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setDoOutput(true);
-
-                String payload = String.format(
-                        "{\"host\":\"www.jobtrees.com\",\"key\":\"%s\",\"keyLocation\":\"https://www.jobtrees.com/%s.txt\",\"urlList\":[\"%s\"]}",
-                        INDEXNOW_API_KEY, INDEXNOW_API_KEY, url);
-
-                conn.getOutputStream().write(payload.getBytes());
-                conn.getResponseCode();
+                for (String fileName : dirty) {
+                    SitemapChunk chunk = manifest.chunk(fileName);
+                    if (chunk.size() == 0) {
+                        // Emptied by removals: an empty <urlset> is no use to
+                        // crawlers, and the index no longer lists the file.
+                        manifest.removeFile(fileName);
+                        uploads.add(uploader.delete(fileName));
+                    } else {
+                        render.submit(chunk);
+                    }
+                }
+                render.finish();
+            } catch (InterruptedException e) {
+                pipeline.fail(e);
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
-                e.printStackTrace();
+                pipeline.fail(e);
             }
+            pipeline.await();
         }
+        awaitUploads(uploads);
+        manifest.setWatermark(runStarted);
+        manifest.save(manifestPath(indexName));
+        System.out.println(indexName + ": uploaded " + uploaded + " of " + dirty.size()
+                + " touched sitemap files, the rest were unchanged");
+        queueJobUrls(changedIds);
+        return manifest.files();
     }
 
-    private void generateMainSitemap(List<String> filePaths) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.newDocument();
+    /**
+     * Queues the posting URLs of changed jobs for IndexNow. Removed postings
+     * are submitted too, so crawlers learn they are gone.
+     */
+    private void queueJobUrls(Set<String> changedIds) {
+        for (String id : changedIds) {
+            indexNow.add(SitemapChunk.JOB_URL_PREFIX + id);
+        }
+    }
 
-        Element urlset = doc.createElement("urlset");
-        urlset.setAttribute("xmlns", "http://www.sitemaps.org/schemas/sitemap/0.9");
-        doc.appendChild(urlset);
+    /**
+     * Adds the stage that renders and uploads one index's files and returns
+     * it. A file is hashed first and only rendered for upload when the hash
+     * differs from {@code previousHash}; rendering twice is far cheaper than a
+     * PUT plus crawlers re-fetching an unchanged file.
+     * <p>
+     * Files are streamed, compressed on the way when enabled, into an
+     * {@link S3AsyncUploader} stream, which holds at most one 5 MB part per
+     * file and blocks while the PUT limit is reached. Memory for uploads is
+     * thus bounded by the part size times render threads plus PUTs in
+     * flight, however large the files get. Each upload's completion is added
+     * to {@code uploads} and records the file in {@code manifest} and, when
+     * given, {@code checkpoint}; a failed upload stops the pipeline.
+     */
+    private StagedPipeline.Stage<SitemapChunk> renderStage(StagedPipeline pipeline, String indexName,
+            SitemapManifest manifest, SitemapCheckpoint checkpoint, Function<SitemapChunk, String> previousHash,
+            List<CompletableFuture<Void>> uploads, AtomicInteger uploaded) {
+        return pipeline.stage(indexName + "-render", renderParallelism, STAGE_QUEUE_CAPACITY, chunk -> {
+            String sha256 = digest(chunk::writeTo, "SHA-256");
+            if (sha256.equals(previousHash.apply(chunk))) {
+                recordFile(manifest, checkpoint, chunk, sha256);
+                return;
+            }
+            CompletableFuture<Void> done = upload(chunk).thenRun(() -> {
+                recordFile(manifest, checkpoint, chunk, sha256);
+                uploaded.incrementAndGet();
+            });
+            done.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    pipeline.fail(unwrap(error));
+                }
+            });
+            uploads.add(done);
+        });
+    }
 
-        for (String path : filePaths) {
-            Element url = doc.createElement("url");
-            urlset.appendChild(url);
+    private static void recordFile(SitemapManifest manifest, SitemapCheckpoint checkpoint, SitemapChunk chunk,
+            String sha256) {
+        manifest.putFile(chunk, sha256);
+        if (checkpoint != null) {
+            try {
+                checkpoint.commit(chunk, sha256);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not checkpoint " + chunk.getFileName(), e);
+            }
+        }
+    }
+
+    /**
+     * Writes the file into an upload stream, gzip-compressed when
+     * {@link #setGzipSitemaps} is on, and returns the upload's completion.
+     */
+    private CompletableFuture<String> upload(SitemapChunk chunk) throws IOException {
+        S3AsyncUploader.StreamingUpload upload = uploader.openStream(chunk.getFileName(), sitemapContentType());
+        // Not try-with-resources: closing publishes, which a failed write must not do.
+        try {
+            OutputStream out = gzipSitemaps ? new GZIPOutputStream(upload, GZIP_BUFFER_SIZE) : upload;
+            chunk.writeTo(out);
+            out.close();
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            throw e;
+        }
+        return upload.getResult();
+    }
 
-            Element loc = doc.createElement("loc");
-            loc.setTextContent("https://www.jobtrees.com/api/sitemap/" + path.replace(PUBLIC_PATH, ""));
-            url.appendChild(loc);
+    /** Waits for every PUT of an index and rethrows the first failure. */
+    private static void awaitUploads(List<CompletableFuture<Void>> uploads) throws Exception {
+        join(CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0])));
+    }
 
-            url.appendChild(createElement(doc, "lastmod", new Date().toInstant().toString()));
-            url.appendChild(createElement(doc, "changefreq", "daily"));
-            url.appendChild(createElement(doc, "priority", "1.0"));
+    private static <T> T join(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
         }
+    }
 
-        StringWriter writer = new StringWriter();
-        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc), new StreamResult(writer));
-        uploadToS3("sitemap_Alljobs.xml", writer.toString());
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private String sitemapExtension() {
+        return gzipSitemaps ? ".xml.gz" : ".xml";
+    }
+
+    private String sitemapContentType() {
+        return gzipSitemaps ? "application/gzip" : "application/xml";
+    }
+
+    private Path manifestPath(String indexName) {
+        return manifestDirectory.resolve(indexName + ".manifest");
+    }
+
+    private Path checkpointPath(String indexName) {
+        return manifestDirectory.resolve(indexName + ".checkpoint");
+    }
+
+    private interface IndexTask {
+        List<SitemapFile> run(String indexName) throws Exception;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Uses a point in time for each sitemap run so the walk sees one snapshot
+     * of the index. Off by default because the cluster has to support PIT.
+     */
+    public void setUsePointInTime(boolean usePointInTime) {
+        this.usePointInTime = usePointInTime;
+    }
+
+    /**
+     * Walks the active postings only. Where the status and dates are mapped
+     * as keyword and date, nothing but the id and the date doc values comes
+     * back, so no {@code _source} is fetched or parsed; otherwise just the
+     * fields that lack them are read from it, see {@link #isActive}. A point
+     * in time is only opened when {@code mayUsePointInTime}, and then as for
+     * {@link #openSortedCursor}.
+     */
+    private SearchAfterCursor openJobCursor(String index, int pageSize, PostingFieldTypes fields,
+            boolean mayUsePointInTime) throws IOException {
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        List<String> sourceFields = new ArrayList<>();
+        QueryBuilder active = activeFilter(fields);
+        if (active != null) {
+            builder.query(QueryBuilders.boolQuery().filter(active));
+        } else {
+            sourceFields.add("status");
+        }
+        addLastmodFields(builder, fields, sourceFields);
+        builder.size(Math.min(pageSize, MAX_PAGE_SIZE));
+        return openSortedCursor(index, builder, fields, mayUsePointInTime);
+    }
+
+    /**
+     * Sorts on the unique id field with doc values rather than {@code _id},
+     * which would be loaded into fielddata. Without one, sorts on
+     * {@code _shard_doc} under a point in time, which is then opened even if
+     * {@link #setUsePointInTime} is off.
+     */
+    private SearchAfterCursor openSortedCursor(String index, SearchSourceBuilder builder, PostingFieldTypes fields,
+            boolean mayUsePointInTime) throws IOException {
+        String sortField = fields.uniqueSortField();
+        boolean pointInTime = PostingFieldTypes.SHARD_DOC.equals(sortField) || usePointInTime && mayUsePointInTime;
+        return new SearchAfterCursor(client, index, builder, sortField, pointInTime);
+    }
+
+    /**
+     * Status exactly "Active", ignoring case, or no status at all. A match
+     * query on the analyzed text would also take "Not Active", so this needs
+     * a keyword field; null when there is none, and {@link #isActive}
+     * filters on {@code _source} instead.
+     */
+    private static QueryBuilder activeFilter(PostingFieldTypes fields) {
+        String status = fields.keywordField("status");
+        if (status == null) {
+            return null;
+        }
+        return QueryBuilders.boolQuery()
+                .should(QueryBuilders.termQuery(status, "Active").caseInsensitive(true))
+                .should(QueryBuilders.boolQuery().mustNot(QueryBuilders.existsQuery("status")))
+                .minimumShouldMatch(1);
+    }
+
+    /**
+     * Same test as {@link #activeFilter} on the {@code status} in the hit's
+     * {@code _source}. A hit without {@code _source} was already filtered by
+     * the query.
+     */
+    private static boolean isActive(SearchHit hit) {
+        if (!hit.hasSource()) {
+            return true;
+        }
+        Object status = hit.getSourceAsMap().get("status");
+        return status == null || "Active".equalsIgnoreCase(status.toString());
+    }
+
+    /**
+     * Requests the date doc values of the date-mapped {@link #LASTMOD_FIELDS}
+     * and reads the others from {@code _source} along with
+     * {@code sourceFields}; doc values of a text field would fail the search.
+     */
+    private static void addLastmodFields(SearchSourceBuilder builder, PostingFieldTypes fields,
+            List<String> sourceFields) {
+        List<String> includes = new ArrayList<>(sourceFields);
+        for (String field : LASTMOD_FIELDS) {
+            if (fields.isDate(field)) {
+                builder.docValueField(field);
+            } else {
+                includes.add(field);
+            }
+        }
+        if (includes.isEmpty()) {
+            builder.fetchSource(false);
+        } else {
+            builder.fetchSource(includes.toArray(new String[0]), null);
+        }
+    }
+
+    /**
+     * The posting's {@code lastmod}: the first of {@link #LASTMOD_FIELDS}
+     * with a readable date, from its doc values or else its {@code _source},
+     * as a W3C datetime. Null when neither has one, so the entry is written
+     * without a {@code <lastmod>}.
+     */
+    private static String lastmod(SearchHit hit) {
+        for (String field : LASTMOD_FIELDS) {
+            DocumentField docValue = hit.field(field);
+            Object value = docValue != null ? docValue.getValue()
+                    : hit.hasSource() ? hit.getSourceAsMap().get(field) : null;
+            String lastmod = LastmodFormatter.normalize(value);
+            if (lastmod != null) {
+                return lastmod;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Walks the postings updated or posted since {@code sinceMillis},
+     * whatever their status, so that inactive ones can be dropped. Both
+     * {@link #LASTMOD_FIELDS} must be date-mapped.
+     */
+    private SearchAfterCursor openChangedJobCursor(String index, int pageSize, PostingFieldTypes fields,
+            long sinceMillis) throws IOException {
+        BoolQueryBuilder changed = QueryBuilders.boolQuery()
+                .should(QueryBuilders.rangeQuery("updatedDate").gte(sinceMillis))
+                .should(QueryBuilders.rangeQuery("postingDate").gte(sinceMillis))
+                .minimumShouldMatch(1);
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        builder.query(changed);
+        addLastmodFields(builder, fields, Collections.singletonList("status"));
+        builder.size(Math.min(pageSize, MAX_PAGE_SIZE));
+        return openSortedCursor(index, builder, fields, true);
+    }
+
+    /** Hex digest of the uncompressed bytes {@code body} renders, without uploading anything. */
+    private static String digest(SitemapBody body, String algorithm) throws IOException {
+        try (DigestOutputStream digest = new DigestOutputStream(OutputStream.nullOutputStream(),
+                MessageDigest.getInstance(algorithm))) {
+            body.writeTo(digest);
+            return hex(digest.getMessageDigest().digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private interface SitemapBody {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Sends every URL queued during the run to IndexNow in batches and logs
+     * how each endpoint fared. Only called once the run succeeded. Failures
+     * are reported, never thrown: the sitemaps and the index file are already
+     * published at this point.
+     */
+    private void submitToIndexNow() {
+        indexNow.submit().values().forEach(result -> System.out.println("IndexNow " + result));
+    }
+
+    /**
+     * Writes {@code sitemap_Alljobs.xml} as a proper {@code <sitemapindex>},
+     * each file carrying the {@code lastmod} of its newest entry, so a file's
+     * {@code lastmod} only moves when its content does. The index is a single
+     * plain PUT, so its ETag is the MD5 of its content; when that matches,
+     * the upload is skipped.
+     */
+    private void generateMainSitemap(List<SitemapFile> files) throws Exception {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        try (SitemapIndexWriter writer = new SitemapIndexWriter(index)) {
+            for (SitemapFile file : files) {
+                writer.writeSitemap("https://www.jobtrees.com/api/sitemap/" + file.getFileName(),
+                        file.getLastmod());
+            }
+        }
+        if (digest(index::writeTo, "MD5").equals(uploader.eTagOf(MAIN_SITEMAP))) {
+            System.out.println(MAIN_SITEMAP + " is unchanged");
+            return;
+        }
+        join(uploader.upload(MAIN_SITEMAP, "application/xml", index.toByteArray()));
     }
 }